@@ -0,0 +1,65 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.NAMED_EDGE;
+
+/**
+ * Linking 'browse_conditions' rows to MeSH (App.addTrialToMeSHLinks) through BulkReader, the rows coming from a
+ * stubbed JDBC source : the per-row cost of a BUILD stage, without the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AactRowsBenchmark {
+    private static final int DESCRIPTORS = 30_000;
+
+    @Param({"200000"})
+    int rows;
+
+    private Path dir;
+    private MeSHDictionary dictionary;
+    private ConnectionPool pool;
+    private BulkReader reader;
+    private final Node condition = NodeFactory.createURI(NAMED_EDGE + "Condition");
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = SyntheticData.tempDir();
+        dictionary = SyntheticData.meshDictionary(dir, DESCRIPTORS);
+        pool = new ConnectionPool(StubJdbc.dataSource(new String[]{"nct_id", "mesh_term", "downcase_mesh_term"},
+                SyntheticData.aactRows(rows, DESCRIPTORS)));
+        reader = new BulkReader(pool, 10_000);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.close();
+        dictionary.close();
+        SyntheticData.delete(dir);
+    }
+
+    @Benchmark
+    public long addTrialToMeSHLinks(Blackhole bh) throws SQLException, IOException {
+        return App.addTrialToMeSHLinks(reader, "select nct_id, mesh_term, downcase_mesh_term from browse_conditions",
+                null, dictionary, condition, new StreamRDFBase() {
+                    @Override
+                    public void triple(Triple t) {
+                        bh.consume(t);
+                    }
+                }, bh::consume);
+    }
+}
@@ -0,0 +1,105 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a CLI run spends on a query of src/main/sparql (-Dkg.sparql.dir to point elsewhere) : loading the graph, from
+ * N-Triples, from its RDF Thrift snapshot or by opening the TDB2 dataset, then running the query and reading every
+ * row. 'queryOnly' runs it over a graph loaded once, to tell loading and querying apart. The graph is synthetic, or
+ * the N-Triples file given with -Dkg.graph, e.g. a BUILD output (its RDF Thrift snapshot is then written next to it).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CliQueryBenchmark {
+
+    @Param({"1_count_of_records.rq", "example.rq"})
+    String query;
+
+    @Param({"nt", "rt", "tdb"})
+    String source;
+
+    @Param({"20000"})
+    int trials;
+
+    private Path dir;
+    private Path nt;
+    private Path tdb;
+    private Query q;
+    private Model loaded;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path sparql = Path.of(System.getProperty("kg.sparql.dir", "../src/main/sparql"));
+
+        String graph = System.getProperty("kg.graph");
+
+        dir = SyntheticData.tempDir();
+        nt = graph != null ? Path.of(graph) : SyntheticData.knowledgeGraph(dir, trials, 30_000);
+        tdb = dir.resolve("tdb");
+        q = QueryFactory.create(Files.readString(sparql.resolve(query)));
+
+        if (source.equals("rt")) RdfSnapshot.write(nt);
+        if (source.equals("tdb")) TdbStore.bulkLoad(tdb, nt);
+
+        loaded = ModelFactory.createDefaultModel();
+        RdfSnapshot.read(loaded, nt);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        // releases the dataset's files before deleting them.
+        if (source.equals("tdb")) TDBInternal.expel(TdbStore.connect(tdb).asDatasetGraph());
+        SyntheticData.delete(dir);
+    }
+
+    @Benchmark
+    public long loadAndQuery(Blackhole bh) throws IOException {
+        if (source.equals("tdb")) {
+            Dataset ds = TdbStore.connect(tdb);
+
+            return ds.calculateRead(() -> {
+                try (QueryExecution qexec = QueryExecutionFactory.create(q, ds)) {
+                    return consume(qexec, bh);
+                }
+            });
+        }
+
+        // RdfSnapshot.read prefers the snapshot when there is a fresh one, as the CLI does.
+        Model model = ModelFactory.createDefaultModel();
+        RdfSnapshot.read(model, nt);
+
+        try (QueryExecution qexec = QueryExecutionFactory.create(q, model)) {
+            return consume(qexec, bh);
+        }
+    }
+
+    @Benchmark
+    public long queryOnly(Blackhole bh) {
+        try (QueryExecution qexec = QueryExecutionFactory.create(q, loaded)) {
+            return consume(qexec, bh);
+        }
+    }
+
+    private static long consume(QueryExecution qexec, Blackhole bh) {
+        ResultSet rs = qexec.execSelect();
+        long rows = 0;
+
+        for (; rs.hasNext(); rows++) bh.consume(rs.nextSolution());
+
+        return rows;
+    }
+}
@@ -0,0 +1,57 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Label resolution of AACT / PheGenI terms to MeSH statements (App.findStatement), over a mix of exact, differently
+ * cased and unknown terms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeSHLookupBenchmark {
+    private static final int TERMS = 4096;
+
+    @Param({"30000", "350000"})
+    int descriptors;
+
+    private Path dir;
+    private MeSHDictionary dictionary;
+    private String[] terms;
+    private String[] exact;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = SyntheticData.tempDir();
+        dictionary = SyntheticData.meshDictionary(dir, descriptors);
+        terms = SyntheticData.terms(TERMS, descriptors);
+        exact = new String[TERMS];
+        for (int i = 0; i < TERMS; i++) exact[i] = SyntheticData.label(i * 7919 % descriptors);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dictionary.close();
+        SyntheticData.delete(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TERMS)
+    public void findStatement(Blackhole bh) {
+        for (String t : terms) bh.consume(App.findStatement(dictionary, t, null));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TERMS)
+    public void exactHit(Blackhole bh) {
+        for (String t : exact) bh.consume(dictionary.find(t));
+    }
+}
@@ -0,0 +1,55 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MRCOC co-parse of addMeSHCoOccurrences : a memory-mapped join of 'article|DUI|DUI' lines with the articles
+ * linked to trials, one in 'step' articles being linked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MrcocJoinBenchmark {
+    private static final int ARTICLES = 500_000;
+    private static final int PAIRS = 6;
+    private static final int DESCRIPTORS = 30_000;
+
+    @Param({"1", "4"})
+    int parallelism;
+
+    @Param({"8"})
+    int step;
+
+    private Path dir;
+    private Path mrcoc;
+    private int[] articles;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = SyntheticData.tempDir();
+        mrcoc = SyntheticData.mrcoc(dir, ARTICLES, PAIRS, DESCRIPTORS);
+        articles = SyntheticData.linkedArticles(ARTICLES, step);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticData.delete(dir);
+    }
+
+    @Benchmark
+    public long join() throws IOException {
+        LongAdder pairs = new LongAdder();
+
+        new MrcocJoin(mrcoc, articles, parallelism).run(partition -> (article, dui) -> pairs.add(article ^ dui));
+
+        return pairs.sum();
+    }
+}
@@ -0,0 +1,63 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialising the BUILD output : RDFDataMgr.write of a whole graph against streaming the same triples, as N-Triples
+ * and as RDF Thrift, to a null stream so only the serialisation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NTriplesWriteBenchmark {
+
+    @Param({"50000"})
+    int trials;
+
+    private List<Triple> triples;
+    private Graph graph;
+
+    @Setup
+    public void setUp() {
+        triples = SyntheticData.knowledgeGraph(trials, 30_000);
+        graph = GraphFactory.createDefaultGraph();
+        triples.forEach(graph::add);
+    }
+
+    @Benchmark
+    public void writeGraph() {
+        RDFDataMgr.write(OutputStream.nullOutputStream(), graph, Lang.NTRIPLES);
+    }
+
+    @Benchmark
+    public void streamNTriples() {
+        stream(Lang.NTRIPLES);
+    }
+
+    @Benchmark
+    public void streamThrift() {
+        stream(Lang.RDFTHRIFT);
+    }
+
+    private void stream(Lang lang) {
+        StreamRDF out = StreamRDFWriter.getWriterStream(OutputStream.nullOutputStream(), lang);
+
+        out.start();
+        for (Triple t : triples) out.triple(t);
+        out.finish();
+    }
+}
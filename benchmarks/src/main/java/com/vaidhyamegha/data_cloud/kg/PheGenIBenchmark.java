@@ -0,0 +1,55 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PheGenI line parsing and gene to MeSH linking, from an in-memory file so only the parse and lookups are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PheGenIBenchmark {
+    private static final int DESCRIPTORS = 30_000;
+
+    @Param({"150000"})
+    int lines;
+
+    private Path dir;
+    private MeSHDictionary dictionary;
+    private String phegeni;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = SyntheticData.tempDir();
+        dictionary = SyntheticData.meshDictionary(dir, DESCRIPTORS);
+        phegeni = SyntheticData.phegeni(lines, DESCRIPTORS);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dictionary.close();
+        SyntheticData.delete(dir);
+    }
+
+    @Benchmark
+    public void addPhenotypeGenotypes(Blackhole bh) throws IOException {
+        App.addPhenotypeGenotypes(new BufferedReader(new StringReader(phegeni)), dictionary, new StreamRDFBase() {
+            @Override
+            public void triple(Triple t) {
+                bh.consume(t);
+            }
+        }, bh::consume);
+    }
+}
@@ -0,0 +1,57 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URI construction of trial, article, gene and DUI resources, as Model resources and as bare Nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceBenchmark {
+    private static final int IDS = 1024;
+
+    private final Model model = ModelFactory.createDefaultModel();
+    private final RESOURCE[] types = new RESOURCE[IDS];
+    private final String[] ids = new String[IDS];
+
+    @Setup
+    public void setUp() {
+        RESOURCE[] kinds = {RESOURCE.TRIAL, RESOURCE.TRIAL, RESOURCE.PUBMED_ARTICLE, RESOURCE.GENE_ID, RESOURCE.MESH_DUI};
+
+        for (int i = 0; i < IDS; i++) {
+            types[i] = kinds[i % kinds.length];
+
+            switch (types[i]) {
+                case TRIAL:
+                    ids[i] = i % 2 == 0 ? SyntheticData.nct(i) : "ISRCTN" + (10_000_000 + i);
+                    break;
+                case MESH_DUI:
+                    ids[i] = SyntheticData.dui(i);
+                    break;
+                default:
+                    ids[i] = Integer.toString(1_000_000 + i);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IDS)
+    public void createResource(Blackhole bh) {
+        for (int i = 0; i < IDS; i++) bh.consume(types[i].createResource(model, ids[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IDS)
+    public void createNode(Blackhole bh) {
+        for (int i = 0; i < IDS; i++) bh.consume(types[i].createNode(ids[i]));
+    }
+}
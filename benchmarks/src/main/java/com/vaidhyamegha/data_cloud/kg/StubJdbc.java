@@ -0,0 +1,69 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A JDBC data source answering every query with the same in-memory rows, enough for BulkReader's scans. The BUILD
+ * queries are PostgreSQL specific, so benchmarks replay synthetic rows rather than run them on an embedded database :
+ * what is measured is the per-row work, not the database.
+ */
+final class StubJdbc {
+
+    private StubJdbc() { }
+
+    static DataSource dataSource(String[] columns, List<String[]> rows) {
+        return proxy(DataSource.class, (method, args) -> method.equals("getConnection") ? connection(columns, rows) : null);
+    }
+
+    private static Connection connection(String[] columns, List<String[]> rows) {
+        return proxy(Connection.class, (method, args) -> method.equals("prepareStatement") ? statement(columns, rows) : null);
+    }
+
+    private static PreparedStatement statement(String[] columns, List<String[]> rows) {
+        return proxy(PreparedStatement.class, (method, args) -> method.equals("executeQuery") ? resultSet(columns, rows) : null);
+    }
+
+    private static ResultSet resultSet(String[] columns, List<String[]> rows) {
+        List<String> names = Arrays.asList(columns);
+        int[] row = {-1};
+
+        return proxy(ResultSet.class, (method, args) -> {
+            switch (method) {
+                case "next":
+                    return ++row[0] < rows.size();
+                case "getString":
+                    int column = args[0] instanceof Integer ? (Integer) args[0] - 1 : names.indexOf((String) args[0]);
+
+                    return rows.get(row[0])[column];
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    /**
+     * Methods not handled are no-ops (close, setFetchSize, rollback ...), returning false / 0 when primitive.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class<?>[]{type}, (p, m, args) -> {
+            Object result = handler.invoke(m.getName(), args);
+
+            if (result != null || !m.getReturnType().isPrimitive() || m.getReturnType() == void.class) return result;
+            if (m.getReturnType() == boolean.class) return false;
+            if (m.getReturnType() == long.class) return 0L;
+
+            return 0;
+        });
+    }
+}
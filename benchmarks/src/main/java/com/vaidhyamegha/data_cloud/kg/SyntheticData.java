@@ -0,0 +1,227 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.NAMED_EDGE;
+
+/**
+ * Deterministic stand-ins for the BUILD inputs (MeSH N-Triples, AACT browse rows, MRCOC and PheGenI files) and for its
+ * output graph, so benchmarks run offline and compare like with like across runs. Sizes are scaled by the
+ * benchmark's parameters; the shapes (id formats, field layout, label case) follow the real files.
+ */
+final class SyntheticData {
+    static final long SEED = 42;
+
+    private static final String MESH = "http://id.nlm.nih.gov/mesh/2022/";
+    private static final String RDFS_LABEL = "http://www.w3.org/2000/01/rdf-schema#label";
+    private static final String PREF_LABEL = "http://id.nlm.nih.gov/mesh/vocab#prefLabel";
+    private static final String[] WORDS = {"Acute", "Chronic", "Neoplasms", "Syndrome", "Disease", "Infection",
+            "Deficiency", "Disorders", "Pulmonary", "Cardiac", "Renal", "Hepatic", "Type", "Virus", "Inhibitors"};
+
+    private SyntheticData() { }
+
+    static String dui(int i) {
+        return String.format("D%06d", i);
+    }
+
+    static String nct(int i) {
+        return String.format("NCT%08d", i);
+    }
+
+    /**
+     * Label of descriptor 'i', distinct for every i.
+     */
+    static String label(int i) {
+        return WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length] + " " + i;
+    }
+
+    /**
+     * MeSH descriptors D000000.. with an rdfs:label, each with a term (T...) carrying the same text as prefLabel.
+     */
+    static Path meshNTriples(Path dir, int descriptors) throws IOException {
+        Path nt = dir.resolve("mesh-" + descriptors + ".nt");
+
+        try (Writer w = writer(nt)) {
+            for (int i = 0; i < descriptors; i++) {
+                w.write("<" + MESH + dui(i) + "> <" + RDFS_LABEL + "> \"" + label(i) + "\"@en .\n");
+                w.write("<" + MESH + String.format("T%06d", i) + "> <" + PREF_LABEL + "> \"" + label(i) + "\"@en .\n");
+            }
+        }
+
+        return nt;
+    }
+
+    /**
+     * Case folded dictionary over meshNTriples(dir, descriptors).
+     */
+    static MeSHDictionary meshDictionary(Path dir, int descriptors) throws IOException {
+        Path dictionary = dir.resolve("mesh-" + descriptors + ".dict");
+
+        MeSHDictionary.build(meshNTriples(dir, descriptors), dictionary, true);
+
+        return MeSHDictionary.open(dictionary);
+    }
+
+    /**
+     * Terms as the AACT / PheGenI rows carry them : mostly exact labels, some in another case (found only by the
+     * folded table) and some unknown.
+     */
+    static String[] terms(int n, int descriptors) {
+        Random random = new Random(SEED);
+        String[] terms = new String[n];
+
+        for (int i = 0; i < n; i++) {
+            int d = random.nextInt(descriptors), kind = random.nextInt(10);
+
+            terms[i] = kind < 7 ? label(d) : kind < 9 ? label(d).toUpperCase() : "Unknown term " + d;
+        }
+
+        return terms;
+    }
+
+    /**
+     * 'browse_conditions' rows : nct_id, mesh_term, downcase_mesh_term.
+     */
+    static List<String[]> aactRows(int n, int descriptors) {
+        String[] terms = terms(n, descriptors);
+        List<String[]> rows = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) rows.add(new String[]{nct(i / 3), terms[i], terms[i].toLowerCase()});
+
+        return rows;
+    }
+
+    /**
+     * Sorted 'article|DUI|DUI' lines, 'pairs' per article.
+     */
+    static Path mrcoc(Path dir, int articles, int pairs, int descriptors) throws IOException {
+        Path file = dir.resolve("mrcoc-" + articles + ".txt");
+        Random random = new Random(SEED);
+
+        try (Writer w = writer(file)) {
+            for (int a = 1; a <= articles; a++)
+                for (int p = 0; p < pairs; p++)
+                    w.write(a + "|" + dui(random.nextInt(descriptors)) + "|" + dui(random.nextInt(descriptors)) + "\n");
+        }
+
+        return file;
+    }
+
+    /**
+     * Every 'step'th article id in [1, articles], i.e. the articles linked to trials.
+     */
+    static int[] linkedArticles(int articles, int step) {
+        int[] ids = new int[(articles + step - 1) / step];
+
+        for (int i = 0; i < ids.length; i++) ids[i] = 1 + i * step;
+
+        return ids;
+    }
+
+    /**
+     * PheGenI TAB lines : #, trait, SNP, context, gene, gene id, gene 2, gene id 2, chromosome, position, source,
+     * PubMed id, p-value.
+     */
+    static String phegeni(int n, int descriptors) {
+        String[] traits = terms(n, descriptors);
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder(n * 96);
+
+        for (int i = 0; i < n; i++) {
+            int g1 = random.nextInt(50_000), g2 = random.nextInt(50_000);
+
+            sb.append(i + 1).append('\t').append(traits[i]).append("\trs").append(random.nextInt(1 << 24))
+                    .append("\tintron\tGENE").append(g1).append('\t').append(g1).append("\tGENE").append(g2)
+                    .append('\t').append(g2).append('\t').append(1 + random.nextInt(22)).append('\t')
+                    .append(random.nextInt(1 << 28)).append("\tNHGRI\t").append(random.nextInt(1 << 25))
+                    .append("\t1.0E-8\n");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * A graph shaped like the BUILD output : trials linked to articles, conditions and interventions, articles to
+     * MeSH DUIs, genes to MeSH descriptors, plus the descriptors' labels.
+     */
+    static List<Triple> knowledgeGraph(int trials, int descriptors) {
+        Random random = new Random(SEED);
+        List<Triple> triples = new ArrayList<>(trials * 12);
+        Node article = NodeFactory.createURI(NAMED_EDGE + "Pubmed_Article");
+        Node condition = NodeFactory.createURI(NAMED_EDGE + "Condition");
+        Node intervention = NodeFactory.createURI(NAMED_EDGE + "Intervention");
+        Node meshDui = NodeFactory.createURI(NAMED_EDGE + "MeSH_DUI");
+        Node gene = NodeFactory.createURI(NAMED_EDGE + "Gene");
+        Node label = NodeFactory.createURI(RDFS_LABEL);
+
+        for (int i = 0; i < descriptors; i++)
+            triples.add(Triple.create(descriptor(i), label, NodeFactory.createLiteral(label(i), "en")));
+
+        for (int t = 0; t < trials; t++) {
+            Node trial = RESOURCE.TRIAL.createNode(nct(t));
+
+            triples.add(Triple.create(trial, condition, descriptor(random.nextInt(descriptors))));
+            triples.add(Triple.create(trial, intervention, descriptor(random.nextInt(descriptors))));
+
+            for (int a = 0; a < 2; a++) {
+                String pmid = Integer.toString(1 + random.nextInt(trials * 4));
+                Node pubmed = RESOURCE.PUBMED_ARTICLE.createNode(pmid);
+
+                triples.add(Triple.create(trial, article, pubmed));
+                for (int d = 0; d < 3; d++)
+                    triples.add(Triple.create(pubmed, meshDui, RESOURCE.MESH_DUI.createNode(dui(random.nextInt(descriptors)))));
+            }
+
+            triples.add(Triple.create(RESOURCE.GENE_ID.createNode(Integer.toString(random.nextInt(50_000))), gene,
+                    descriptor(random.nextInt(descriptors))));
+        }
+
+        return triples;
+    }
+
+    static Path knowledgeGraph(Path dir, int trials, int descriptors) throws IOException {
+        Path nt = dir.resolve("kg-" + trials + ".nt");
+
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(nt))) {
+            StreamRDF out = StreamRDFWriter.getWriterStream(os, Lang.NTRIPLES);
+            out.start();
+            for (Triple t : knowledgeGraph(trials, descriptors)) out.triple(t);
+            out.finish();
+        }
+
+        return nt;
+    }
+
+    private static Node descriptor(int i) {
+        return NodeFactory.createURI(MESH + dui(i));
+    }
+
+    private static Writer writer(Path file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    static Path tempDir() throws IOException {
+        return Files.createTempDirectory("kg-bench");
+    }
+
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+}
@@ -4,7 +4,7 @@ set -ex
 PGPASSWORD=0Jg7GdFObf psql -U postgres -h 10.240.64.9 -d aact -t -A -F"|" -c "select p from public.trial_article , unnest(pubmed_articles) p order by p asc" > data/open_knowledge_graph_on_clinical_trials/pubmed_articles.txt
 
 cut -d '|' -f1,9,15 data/open_knowledge_graph_on_clinical_trials/detailed_CoOccurs_2021.txt > data/open_knowledge_graph_on_clinical_trials/detailed_CoOccurs_2021_selected_fields.txt
-sort -u  data/open_knowledge_graph_on_clinical_trials/detailed_CoOccurs_2021_selected_fields.txt > data/open_knowledge_graph_on_clinical_trials/detailed_CoOccurs_2021_selected_fields_sorted.txt
+sort -u -t "|" -k1,1n -k2,2 -k3,3 data/open_knowledge_graph_on_clinical_trials/detailed_CoOccurs_2021_selected_fields.txt > data/open_knowledge_graph_on_clinical_trials/detailed_CoOccurs_2021_selected_fields_sorted.txt
 
 # https://unix.stackexchange.com/a/330662/47615
 # Below bash implementation is an inefficient way of searching articles in MRCOC.
@@ -2,29 +2,20 @@
 set -ex
 
 # reference : https://github.com/eclipse/rdf4j/issues/1104#issuecomment-475808996
+# expects the shards of a BUILD run with -sh, e.g. -sh 16 -sz -sd /data/shards, no splitting needed.
 
-rm -rf temp_nt
-mkdir temp_nt
-cd temp_nt
+SHARDS=${1:-/data/shards}
 
-split -l100000 /data/vaidhyamegha_open_kg_clinical_trials.nt
-echo "open knowledge-graph-1" > ../commands.txt
-echo "clear" > ../commands.txt
-echo "open knowledge-graph-1" > ../commands.txt
+(cd "${SHARDS}" && sha256sum -c SHA256SUMS)
 
-ls x* | while read f; do
+echo "open knowledge-graph-1" > commands.txt
 
-	echo "load /data/tools/eclipse-rdf4j-3.6.3/temp_nt/${f}.nt" >> ../commands.txt
-	mv "${f}" "${f}.nt"; 
-
-done;
+jq -r '.shards[].file' "${SHARDS}/manifest.json" | while read f; do
 
+	echo "load ${SHARDS}/${f}" >> commands.txt
 
-echo "quit" >> ../commands.txt
+done;
 
-cd ../
+echo "quit" >> commands.txt
 
 cat commands.txt | ./bin/console.sh
-
-
-rm -rf temp_nt
\ No newline at end of file
@@ -0,0 +1,344 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.NAMED_EDGE;
+import static com.vaidhyamegha.data_cloud.kg.Constants.OUTPUT_BUFFER_BYTES;
+
+/**
+ * Compact index of the links between trials, PubMed articles, MeSH descriptors and genes, to answer "what is linked
+ * to this id" without a SPARQL query over the whole graph.
+ *
+ * Ids of each kind are dictionary encoded : sorted, an entity's int id being its rank. Each relation is stored in
+ * compressed sparse row form in both directions, i.e. an offsets array indexed by source id into one array of target
+ * ids, so the neighbours of an id are one binary search on the dictionary plus a contiguous array slice.
+ */
+class AdjacencyIndex {
+    private static final int MAGIC = 0x4b474158; // KGAX
+    private static final int VERSION = 1;
+    // MeSH RDF IRIs name their release, e.g. http://id.nlm.nih.gov/mesh/2022/D001249, any release is indexed.
+    private static final String MESH_RDF = "http://id.nlm.nih.gov/mesh/";
+    private static final Pattern MESH_RELEASE = Pattern.compile("[0-9]+/");
+
+    enum Kind {
+        TRIAL("https://clinicaltrials.gov/ct2/show/", "https://www.who.int/clinical-trials-registry-platform/"),
+        ARTICLE("https://pubmed.ncbi.nlm.nih.gov/"),
+        MESH(MESH_RDF, "https://meshb.nlm.nih.gov/record/ui?ui="),
+        GENE("https://www.ncbi.nlm.nih.gov/gene/");
+
+        private final String[] prefixes;
+
+        Kind(String... prefixes) {
+            this.prefixes = prefixes;
+        }
+
+        /**
+         * Id of the entity named by 'uri', null when it isn't of this kind. MeSH descriptors and MRCOC DUIs share
+         * their ids (e.g. D001249).
+         */
+        String idOf(String uri) {
+            for (String p : prefixes) {
+                if (!uri.startsWith(p)) continue;
+
+                if (!p.equals(MESH_RDF)) return uri.substring(p.length());
+
+                Matcher m = MESH_RELEASE.matcher(uri).region(p.length(), uri.length());
+
+                return m.lookingAt() ? uri.substring(m.end()) : null;
+            }
+
+            return null;
+        }
+    }
+
+    enum Relation {
+        PUBMED_ARTICLE("Pubmed_Article", Kind.TRIAL, Kind.ARTICLE),
+        CONDITION("Condition", Kind.TRIAL, Kind.MESH),
+        INTERVENTION("Intervention", Kind.TRIAL, Kind.MESH),
+        MESH_DUI("MeSH_DUI", Kind.ARTICLE, Kind.MESH),
+        GENE("Gene", Kind.GENE, Kind.MESH);
+
+        final String label;
+        final Kind from;
+        final Kind to;
+
+        Relation(String label, Kind from, Kind to) {
+            this.label = label;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private final String[][] dictionaries = new String[Kind.values().length][];
+    // [relation][0 : forward, 1 : reverse] offsets and targets
+    private final int[][][] offsets = new int[Relation.values().length][2][];
+    private final int[][][] targets = new int[Relation.values().length][2][];
+
+    private AdjacencyIndex() { }
+
+    int size(Kind k) {
+        return dictionaries[k.ordinal()].length;
+    }
+
+    long edges(Relation r) {
+        return targets[r.ordinal()][0].length;
+    }
+
+    /**
+     * @return the int id of 'key', or -1 when not in the index.
+     */
+    int id(Kind k, String key) {
+        int i = Arrays.binarySearch(dictionaries[k.ordinal()], key);
+
+        return i < 0 ? -1 : i;
+    }
+
+    String key(Kind k, int id) {
+        return dictionaries[k.ordinal()][id];
+    }
+
+    /**
+     * Ids linked to 'id' by 'r', from its 'from' side when forward, else from its 'to' side.
+     */
+    int[] neighbours(Relation r, boolean forward, int id) {
+        int d = forward ? 0 : 1;
+        int[] off = offsets[r.ordinal()][d];
+
+        return Arrays.copyOfRange(targets[r.ordinal()][d], off[id], off[id + 1]);
+    }
+
+    /**
+     * Writes 'key \t relation \t neighbour' lines, '^' marking relations followed backwards, e.g. from a MeSH id to
+     * the trials having it as a condition.
+     *
+     * @return the number of lines written, -1 when 'key' isn't in the index.
+     */
+    int lookup(Kind k, String key, PrintStream out) {
+        int id = id(k, key);
+
+        if (id < 0) return -1;
+
+        int lines = 0;
+
+        for (Relation r : Relation.values()) {
+            if (r.from == k)
+                for (int n : neighbours(r, true, id)) {
+                    out.println(key + "\t" + r.label + "\t" + key(r.to, n));
+                    lines++;
+                }
+
+            if (r.to == k)
+                for (int n : neighbours(r, false, id)) {
+                    out.println(key + "\t^" + r.label + "\t" + key(r.from, n));
+                    lines++;
+                }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Collects the relations from N-Triples files (gzipped ones too, e.g. shards), in one streaming pass.
+     */
+    static AdjacencyIndex build(Path... nTriples) {
+        Builder b = new Builder();
+
+        for (Path nt : nTriples)
+            RDFParser.source(nt).lang(Lang.NT).parse(new StreamRDFBase() {
+                @Override
+                public void triple(Triple t) {
+                    b.add(t);
+                }
+            });
+
+        return b.build();
+    }
+
+    static class Builder {
+        private final Map<String, Relation> relations = new HashMap<>();
+        private final List<Map<String, Integer>> ids = new ArrayList<>();
+        private final int[][] src = new int[Relation.values().length][];
+        private final int[][] dst = new int[Relation.values().length][];
+        private final int[] counts = new int[Relation.values().length];
+        // edges whose ends aren't IRIs of the relation's kinds.
+        private long skipped = 0;
+
+        Builder() {
+            for (Relation r : Relation.values()) {
+                relations.put(NAMED_EDGE + r.label, r);
+                src[r.ordinal()] = new int[1024];
+                dst[r.ordinal()] = new int[1024];
+            }
+
+            for (Kind ignored : Kind.values()) ids.add(new HashMap<>());
+        }
+
+        void add(Triple t) {
+            Node p = t.getPredicate();
+            Relation r = p.isURI() ? relations.get(p.getURI()) : null;
+
+            if (r == null || !t.getSubject().isURI() || !t.getObject().isURI()) return;
+
+            String from = r.from.idOf(t.getSubject().getURI()), to = r.to.idOf(t.getObject().getURI());
+
+            if (from == null || to == null) {
+                skipped++;
+                return;
+            }
+
+            add(r, from, to);
+        }
+
+        void add(Relation r, String from, String to) {
+            int i = r.ordinal(), n = counts[i];
+
+            if (n == src[i].length) {
+                src[i] = Arrays.copyOf(src[i], n * 2);
+                dst[i] = Arrays.copyOf(dst[i], n * 2);
+            }
+
+            src[i][n] = tempId(r.from, from);
+            dst[i][n] = tempId(r.to, to);
+            counts[i]++;
+        }
+
+        private int tempId(Kind k, String key) {
+            Map<String, Integer> m = ids.get(k.ordinal());
+
+            return m.computeIfAbsent(key, x -> m.size());
+        }
+
+        AdjacencyIndex build() {
+            AdjacencyIndex index = new AdjacencyIndex();
+
+            if (skipped > 0) System.out.println("Adjacency index : " + skipped + " edges skipped, their subject or object isn't a known IRI");
+            int[][] rank = new int[Kind.values().length][];
+
+            // temporary ids (order of first appearance) to ranks in the sorted dictionary.
+            for (Kind k : Kind.values()) {
+                Map<String, Integer> m = ids.get(k.ordinal());
+                String[] keys = m.keySet().toArray(new String[0]);
+                Arrays.sort(keys);
+
+                int[] r = new int[keys.length];
+                for (int i = 0; i < keys.length; i++) r[m.get(keys[i])] = i;
+
+                index.dictionaries[k.ordinal()] = keys;
+                rank[k.ordinal()] = r;
+            }
+
+            for (Relation r : Relation.values()) {
+                int i = r.ordinal(), n = counts[i];
+                int[] s = new int[n], d = new int[n];
+
+                for (int e = 0; e < n; e++) {
+                    s[e] = rank[r.from.ordinal()][src[i][e]];
+                    d[e] = rank[r.to.ordinal()][dst[i][e]];
+                }
+
+                csr(index, r, 0, s, d, index.dictionaries[r.from.ordinal()].length);
+                csr(index, r, 1, d, s, index.dictionaries[r.to.ordinal()].length);
+            }
+
+            return index;
+        }
+
+        /**
+         * Counting sort of the edges by source, targets of a source sorted and de-duplicated.
+         */
+        private static void csr(AdjacencyIndex index, Relation r, int direction, int[] s, int[] d, int nodes) {
+            int[] off = new int[nodes + 1];
+
+            for (int v : s) off[v + 1]++;
+            for (int v = 0; v < nodes; v++) off[v + 1] += off[v];
+
+            int[] next = Arrays.copyOf(off, nodes);
+            int[] tgt = new int[s.length];
+            for (int e = 0; e < s.length; e++) tgt[next[s[e]]++] = d[e];
+
+            // compact each row in place once sorted, dropping repeated links.
+            int w = 0;
+            int[] compactOff = new int[nodes + 1];
+            for (int v = 0; v < nodes; v++) {
+                Arrays.sort(tgt, off[v], off[v + 1]);
+                compactOff[v] = w;
+
+                for (int e = off[v]; e < off[v + 1]; e++)
+                    if (w == compactOff[v] || tgt[e] != tgt[w - 1]) tgt[w++] = tgt[e];
+            }
+            compactOff[nodes] = w;
+
+            index.offsets[r.ordinal()][direction] = compactOff;
+            index.targets[r.ordinal()][direction] = Arrays.copyOf(tgt, w);
+        }
+    }
+
+    void write(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), OUTPUT_BUFFER_BYTES))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            for (String[] keys : dictionaries) {
+                out.writeInt(keys.length);
+                for (String key : keys) out.writeUTF(key);
+            }
+
+            for (Relation r : Relation.values())
+                for (int d = 0; d < 2; d++) {
+                    writeInts(out, offsets[r.ordinal()][d]);
+                    writeInts(out, targets[r.ordinal()][d]);
+                }
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static AdjacencyIndex read(Path path) throws IOException {
+        AdjacencyIndex index = new AdjacencyIndex();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), OUTPUT_BUFFER_BYTES))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new RuntimeException("Sorry, " + path + " is not an adjacency index, rebuild it");
+
+            for (int k = 0; k < index.dictionaries.length; k++) {
+                String[] keys = new String[in.readInt()];
+                for (int i = 0; i < keys.length; i++) keys[i] = in.readUTF();
+                index.dictionaries[k] = keys;
+            }
+
+            for (Relation r : Relation.values())
+                for (int d = 0; d < 2; d++) {
+                    index.offsets[r.ordinal()][d] = readInts(in);
+                    index.targets[r.ordinal()][d] = readInts(in);
+                }
+        }
+
+        return index;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int v : a) out.writeInt(v);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] a = new int[in.readInt()];
+        for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+
+        return a;
+    }
+}
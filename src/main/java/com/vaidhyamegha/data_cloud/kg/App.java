@@ -1,25 +1,36 @@
 package com.vaidhyamegha.data_cloud.kg;
 
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.graph.GraphFactory;
 import org.apache.jena.util.FileManager;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
 import java.sql.ResultSet;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Properties;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static com.vaidhyamegha.data_cloud.kg.Constants.*;
 import static org.kohsuke.args4j.OptionHandlerFilter.ALL;
@@ -39,24 +50,93 @@ public class App {
     @Option(name = "-g", aliases = "--phegeni", usage = "Path to phegeni file", required = false)
     private File phegeni = new File("data/open_knowledge_graph_on_clinical_trials/PheGenI_Association_full.tab");
 
-    @Option(name = "-v", aliases = "--mesh-vocab-rdf", usage = "Path to the downloaded MeSH Vocabulary Turtle file.", required = false)
-    private String meshVocab = "data/open_knowledge_graph_on_clinical_trials/vocabulary_1.0.0.ttl";
-
     @Option(name = "-co", aliases = "--mrcoc-sorted-file", usage = "Path to sorted MRCOC detailed co occurrence file for selected fields.", required = false)
     private String mrcoc = "data/open_knowledge_graph_on_clinical_trials/detailed_CoOccurs_2021_selected_fields_sorted.txt";
 
+    @Option(name = "-v", aliases = "--mesh-vocab-rdf", usage = "Deprecated and ignored, the MeSH Vocabulary Turtle file isn't read any more.", required = false)
+    private String meshVocab = null;
+
     @Option(name = "-me", aliases = "--mesh-rdf", usage = "Path to the downloaded MeSH RDF file.", required = false)
     private String meshRDF = "data/open_knowledge_graph_on_clinical_trials/mesh2022.nt";
 
+    @Option(name = "-md", aliases = "--mesh-dictionary", usage = "Path to the label to MeSH descriptor dictionary built from the MeSH RDF file.", required = false)
+    private String meshDictionary = "data/open_knowledge_graph_on_clinical_trials/mesh2022.dict";
+
+    @Option(name = "-ms", aliases = "--mesh-subset", usage = "Path to write the part of the MeSH RDF file the graph refers to, for the server's mesh service.", required = false)
+    private String meshSubset = "data/open_knowledge_graph_on_clinical_trials/mesh2022_subset.nt";
+
+    @Option(name = "-mc", aliases = "--mesh-case-fold", usage = "Also match MeSH labels case insensitively.", required = false)
+    private boolean meshCaseFold = false;
+
+    @Option(name = "-st", aliases = "--stream", usage = "Stream N-Triples to the output while building instead of materializing the whole graph in memory. Edges found more than once are written each time.", required = false)
+    private boolean stream = false;
+
+    @Option(name = "-oc", aliases = "--out-of-core", usage = "Build without holding the graph in memory : stages' triples are dictionary encoded, sorted in runs spilled to disk and merged without duplicates into the output.", required = false)
+    private boolean outOfCore = false;
+
+    @Option(name = "-cg", aliases = "--compact-graph", usage = "Hold in memory graphs (build's graph and spools, the graph cli and server load) dictionary encoded, as sorted id arrays off-heap, instead of as Jena's default graph.", required = false)
+    private boolean compactGraph = false;
+
+    @Option(name = "-j", aliases = "--parallelism", usage = "Number of BUILD stages to run concurrently.", required = false)
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "-ec", aliases = "--entrez-cache", usage = "Path to the cache of trial ids already searched in Entrez.", required = false)
+    private String entrezCacheFile = "data/open_knowledge_graph_on_clinical_trials/entrez_cache.tsv";
+
+    @Option(name = "-i", aliases = "--incremental", usage = "Rebuild only what changed since the last checkpoint and write an RDF Patch of the difference.", required = false)
+    private boolean incremental = false;
+
+    @Option(name = "-cp", aliases = "--checkpoint-dir", usage = "Directory holding the incremental BUILD checkpoint.", required = false)
+    private String checkpointDir = "data/open_knowledge_graph_on_clinical_trials/checkpoint";
+
+    @Option(name = "-dp", aliases = "--delta-patch", usage = "Path to the RDF Patch written by an incremental BUILD.", required = false)
+    private String deltaPatch = "data/open_knowledge_graph_on_clinical_trials/vaidhyamegha_open_kg_clinical_trials.rdfp";
+
+    @Option(name = "-rt", aliases = "--rdf-thrift", usage = "Also write binary RDF Thrift snapshots (.rt) of the output and of the MeSH RDF file, loaded by cli and server modes instead of N-Triples.", required = false)
+    private boolean thrift = false;
+
+    @Option(name = "-tdb", aliases = "--tdb2-dataset", usage = "TDB2 dataset directory. build bulk loads its output into it, cli and server query it in place.", required = false)
+    private String tdb = null;
+
+    @Option(name = "-ix", aliases = "--adjacency-index", usage = "Path to the trial, article, MeSH and gene adjacency index, written by build when given and read by cli lookups.", required = false)
+    private String adjacencyIndex = null;
+
+    @Option(name = "-ed", aliases = "--entity-documents", usage = "JSON-LD documents of every trial, article, MeSH descriptor and gene, written by build (with an '.idx' index alongside) and served by server at /entities/{kind}/{id}.", required = false)
+    private String entityDocuments = null;
+
+    @Option(name = "-ids", aliases = "--ids-file", usage = "File of trial, PubMed article, MeSH or gene ids, one per line, to look up in the adjacency index.", required = false)
+    private File idsFile;
+
+    @Option(name = "-sh", aliases = "--shards", usage = "Write the output as this many N-Triples shards, in parallel, with a manifest, instead of one file. 0 for one file.", required = false)
+    private int shards = 0;
+
+    @Option(name = "-sd", aliases = "--shard-dir", usage = "Directory of the output shards and their manifest.", required = false)
+    private String shardDir = "data/open_knowledge_graph_on_clinical_trials/shards";
+
+    @Option(name = "-sz", aliases = "--shard-gzip", usage = "Gzip compress the output shards.", required = false)
+    private boolean shardGzip = false;
+
+    @Option(name = "-sp", aliases = "--shard-partition", usage = "Split triples into shards by SUBJECT hash or by build STAGE.", required = false)
+    private ShardedOutput.Partition shardPartition = ShardedOutput.Partition.SUBJECT;
+
+    @Option(name = "-rp", aliases = "--run-report", usage = "Path to the JSON report of per stage timings, rows, triples, JDBC, Entrez and heap metrics written by build and cli runs.", required = false)
+    private String runReport = "data/open_knowledge_graph_on_clinical_trials/run_report.json";
+
     @Option(name = "-h", aliases = "--hql-config-file", usage = "Path to the HyperGraphQL config file path.", required = false)
     public static String hqlConfig = "src/main/resources/hql-config.json";
 
     @Option(name = "-m", aliases = "--mode", usage = "Build RDF or query pre-built RDF?", required = false)
     private MODE mode = MODE.BUILD;
 
-    @Option(name = "-q", aliases = "--query", usage = "Query file", required = false)
+    @Option(name = "-q", aliases = "--query", usage = "Query file. In batch mode, a directory of .rq files or a file listing them, one per line.", required = false)
     private String query = "src/main/sparql/1_count_of_records.rq";
 
+    @Option(name = "-rd", aliases = "--results-dir", usage = "Directory batch mode writes each query's results to, with a summary.tsv.", required = false)
+    private String resultsDir = "data/open_knowledge_graph_on_clinical_trials/results";
+
+    @Option(name = "-rf", aliases = "--results-format", usage = "Format of batch mode SELECT and ASK results : CSV, TSV or JSON (SPARQL JSON).", required = false)
+    private BatchQueries.Format resultsFormat = BatchQueries.Format.TSV;
+
     @Option(name = "-t", aliases = "--trial-id", usage = "Clinical trial's registered id.", required = false)
     private String trial;
 
@@ -71,51 +151,222 @@ public class App {
 
     private Properties prop = null;
 
+    private ConnectionPool pool = null;
+
+    private BulkReader bulkReader = null;
+
+    private EntrezClient entrezClient = null;
+
+    private EntrezCache entrezCache = null;
+
+    private IncrementalBuild incrementalBuild = null;
+
+    private Path spoolDir = null;
+
+    private TermDictionary terms = null;
+
+    private final Set<Triple> meshLabels = ConcurrentHashMap.newKeySet();
+
+    private static final LongAdder MESH_LOOKUP_HITS = Metrics.REGISTRY.counter("mesh.lookup.hits");
+
+    private static final LongAdder MESH_LOOKUP_MISSES = Metrics.REGISTRY.counter("mesh.lookup.misses");
+
     public static void main(String[] args) throws IOException {
         new App().doMain(args);
     }
 
     public void doMain(String[] args)  {
         CmdLineParser parser = new CmdLineParser(this);
+        Map<String, Object> run = null;
 
         try {
             Model model = initialize(args, parser);
 
+            if (mode != MODE.SERVER) {
+                run = runInfo(args);
+                Metrics.REGISTRY.startHeapSampler();
+            }
+
             if (mode == MODE.BUILD) {
-                addAllTrials(model);
+                if (shards > 0 && incremental) throw new RuntimeException("Sorry, -sh can't be combined with -i");
+                if (outOfCore && incremental) throw new RuntimeException("Sorry, -oc can't be combined with -i");
+
+                MeSHDictionary meshDict = MeSHDictionary.openOrBuild(Path.of(meshDictionary), Path.of(meshRDF), meshCaseFold);
+
+                pool = new ConnectionPool(prop, parallelism + 1);
+                bulkReader = new BulkReader(pool, Integer.parseInt(prop.getProperty("fetch_size", DEFAULT_FETCH_SIZE)));
+                entrezCache = EntrezCache.open(Path.of(entrezCacheFile));
+                entrezClient = createEntrezClient();
+
+                if (incremental) incrementalBuild = new IncrementalBuild(Path.of(checkpointDir), bulkReader,
+                        Long.parseLong(prop.getProperty("sort_memory_mb", DEFAULT_SORT_MEMORY_MB)) << 20);
+                String meshFingerprint = incremental ? incrementalBuild.fileDigest(Path.of(meshDictionary)) : "";
+
+                List<BuildStage> stages = List.of(
+                        new BuildStage("trials", this::addAllTrials),
+                        new BuildStage("conditions", out -> addTrialConditions(out, meshDict,
+                                changedTrials("conditions", "aact_browse_conditions", meshFingerprint))),
+                        new BuildStage("interventions", out -> addTrialInterventions(out, meshDict,
+                                changedTrials("interventions", "aact_browse_interventions", meshFingerprint))),
+                        // co-occurrences are read for the articles the trials stage (re)links.
+                        new BuildStage("co_occurrences", out -> addMeSHCoOccurrences(out, coOccurrenceArticles()), "trials"),
+                        new BuildStage("phenotype_genotypes", out -> {
+                            if (!unchanged("phenotype_genotypes", () -> incrementalBuild.fileDigest(phegeni.toPath()) + ","
+                                    + meshFingerprint))
+                                addPhenotypeGenotypes(out, meshDict);
+                        }));
+
+                // streamed : every stage writes N-Triples to its own spool file as it goes, spools are concatenated.
+                boolean onDisk = stream || incremental || outOfCore;
+                spoolDir = onDisk ? Files.createTempDirectory(Path.of(output).toAbsolutePath().getParent(), "stages") : null;
+                // out of core, the sort memory is shared by the stages running at once.
+                long sortMemory = Long.parseLong(prop.getProperty("sort_memory_mb", DEFAULT_SORT_MEMORY_MB)) << 20;
+                long stageSortMemory = sortMemory / Math.max(1, Math.min(parallelism, stages.size()));
+                if (outOfCore) terms = new TermDictionary();
+
+                Map<String, TripleSpool> spools = outOfCore
+                        ? new StageScheduler(parallelism, name -> TripleSpool.outOfCore(spoolDir, name, terms, stageSortMemory)).run(stages)
+                        : new StageScheduler(parallelism, name -> spoolDir == null ? TripleSpool.inMemory(newGraph())
+                                : TripleSpool.onDisk(spoolDir, name)).run(stages);
+
+                Metrics.REGISTRY.stage("write", () -> {
+                    if (incremental) {
+                        finishIncremental(spools, spoolDir);
+                    } else if (shards > 0) {
+                        writeShards(spools, sortMemory);
+                    } else if (outOfCore) try (OutputStream os = new BufferedOutputStream(new FileOutputStream(output), OUTPUT_BUFFER_BYTES)) {
+                        StreamRDF out = StreamRDFWriter.getWriterStream(os, Lang.NT);
+
+                        out.start();
+                        mergeSorted(spools, out, sortMemory);
+                        out.finish();
+                    } else try (OutputStream os = new BufferedOutputStream(new FileOutputStream(output), OUTPUT_BUFFER_BYTES)) {
+                        StreamRDF out = stream ? StreamRDFWriter.getWriterStream(os, Lang.NT) : StreamRDFLib.graph(model.getGraph());
+
+                        for (TripleSpool spool : spools.values()) {
+                            if (stream) spool.copyTo(os);
+                            else spool.mergeInto(out);
+
+                            Metrics.REGISTRY.triples(spool.size());
+                            spool.close();
+                        }
+
+                        out.start();
+                        addMeSHLabels(out);
+                        out.finish();
+
+                        if (!stream) RDFDataMgr.write(os, model, Lang.NT);
+                    }
+                });
+
+                if (spoolDir != null) Files.deleteIfExists(spoolDir);
 
-                Model vocab = ModelFactory.createDefaultModel();
-                vocab.read(meshVocab, "TURTLE");
+                Metrics.REGISTRY.stage("mesh_subset", this::writeMeSHSubset);
 
-                Model meshModel = ModelFactory.createDefaultModel();
-                meshModel.read(meshRDF, "NT");
+                if (thrift) Metrics.REGISTRY.stage("rdf_thrift", () -> {
+                    if (shards > 0) System.out.println("No RDF Thrift snapshot of a sharded output, " + output + " isn't written");
+                    else RdfSnapshot.write(Path.of(output));
 
-                addTrialConditions(model, meshModel);
-                addTrialInterventions(model, meshModel);
+                    RdfSnapshot.write(Path.of(meshSubset));
+                });
 
-                addMeSHCoOccurrences(model, meshModel);
+                if (tdb != null) Metrics.REGISTRY.stage("tdb2", () -> TdbStore.bulkLoad(Path.of(tdb), outputFiles()));
 
-                addPhenotypeGenotypes(model, meshModel);
-                RDFDataMgr.write(new FileOutputStream(output), model, Lang.NT);
+                if (adjacencyIndex != null) Metrics.REGISTRY.stage("adjacency_index", this::writeAdjacencyIndex);
+
+                if (entityDocuments != null) Metrics.REGISTRY.stage("entity_documents", () -> {
+                    long start = System.currentTimeMillis();
+                    int n = EntityDocuments.build(Path.of(entityDocuments), sortMemory, outputFiles());
+
+                    Metrics.REGISTRY.count("entity_documents", n);
+                    System.out.println("Entity documents " + entityDocuments + " : " + n + " entities, written in "
+                            + (System.currentTimeMillis() - start) + " ms");
+                });
+            } else if(mode == MODE.CLI && (trial != null || article != null || symptom != null || disease != null || idsFile != null)) {
+                Metrics.REGISTRY.stage("lookup", this::lookupIds);
             } else if(mode == MODE.CLI) {
                 String q = Files.readString(Path.of(query));
-                model.read(output, "NT");
-                try ( QueryExecution qexec = QueryExecutionFactory.create(q, model) ) {
-                    org.apache.jena.query.ResultSet rs = qexec.execSelect() ;
 
-                    System.out.println("Results: ") ;
-                    System.out.println("-------- ") ;
-                    while (rs.hasNext()) {
-                        QuerySolution rb = rs.nextSolution() ;
+                if (tdb != null && TdbStore.exists(Path.of(tdb))) {
+                    Dataset ds = TdbStore.connect(Path.of(tdb));
+
+                    Metrics.REGISTRY.stage("query", () -> ds.executeRead(() -> {
+                        try ( QueryExecution qexec = QueryExecutionFactory.create(q, ds) ) {
+                            printResults(qexec.execSelect());
+                        }
+                    }));
+                } else {
+                    Metrics.REGISTRY.stage("load", () -> RdfSnapshot.read(model, Path.of(output)));
+                    Metrics.REGISTRY.stage("query", () -> {
+                        try ( QueryExecution qexec = QueryExecutionFactory.create(q, model) ) {
+                            printResults(qexec.execSelect());
+                        }
+                    });
+                }
+            } else if(mode == MODE.BATCH) {
+                List<Path> queries = BatchQueries.queries(Path.of(query));
+                Dataset ds;
+
+                if (tdb != null && TdbStore.exists(Path.of(tdb))) {
+                    ds = TdbStore.connect(Path.of(tdb));
+                } else {
+                    Metrics.REGISTRY.stage("load", () -> RdfSnapshot.read(model, Path.of(output)));
+                    ds = DatasetFactory.wrap(model);
+                }
 
-                        List<String> v = new ArrayList<>();
-                        rb.varNames().forEachRemaining(v::add);
+                BatchQueries batch = new BatchQueries(ds, Path.of(resultsDir), resultsFormat, parallelism,
+                        Long.parseLong(prop.getProperty("sparql_timeout_ms", DEFAULT_SPARQL_TIMEOUT_MS)));
+                long start = System.currentTimeMillis();
+                List<BatchQueries.Result> results = batch.run(queries);
+                long failed = results.stream().filter(r -> r.error != null).count();
 
-                        for (String s: v) System.out.println(rb.get(s));
+                System.out.println(results.size() + " queries, " + failed + " failed, in "
+                        + (System.currentTimeMillis() - start) + " ms. Results in " + resultsDir);
+                if (run != null && failed > 0) run.put("status", failed + " of " + results.size() + " queries failed");
+            }  else if(mode == MODE.SERVER) {
+                // every dataset is loaded once, GraphQL and SPARQL clients share it through the SPARQL endpoint.
+                HqlConfig config = HqlConfig.read(hqlConfig);
+                Map<String, Dataset> datasets = new LinkedHashMap<>();
+                Map<String, Path> sources = new LinkedHashMap<>();
+                int sparqlPort = Integer.parseInt(prop.getProperty("sparql_port", DEFAULT_SPARQL_PORT));
+                long cacheMb = Long.parseLong(prop.getProperty("query_cache_mb", DEFAULT_QUERY_CACHE_MB));
+
+                for (ObjectNode service : config.nTriplesServices()) {
+                    String id = HqlConfig.idOf(service);
+                    Path nt = HqlConfig.fileOf(service);
+
+                    if (tdb != null && TdbStore.exists(Path.of(tdb)) && nt.equals(Path.of(output))) {
+                        // queried in place, not loaded in memory.
+                        datasets.put(id, TdbStore.connect(Path.of(tdb)));
+                        sources.put(id, Path.of(tdb));
+                    } else {
+                        Model m = ModelFactory.createModelForGraph(newGraph());
+                        RdfSnapshot.read(m, nt);
+                        sources.put(id, nt);
+                        datasets.put(id, DatasetFactory.wrap(m));
                     }
+
+                    config.toEndpoint(service, SparqlEndpoint.url(sparqlPort, id));
                 }
-            }  else if(mode == MODE.SERVER) {
-                org.hypergraphql.Application.main(new String[]{"--config", hqlConfig});
+
+                EntityDocuments entities = entityDocuments != null && EntityDocuments.exists(Path.of(entityDocuments))
+                        ? EntityDocuments.open(Path.of(entityDocuments)) : null;
+
+                new SparqlEndpoint(datasets, sources, cacheMb > 0 ? new QueryCache(cacheMb << 20) : null, entities,
+                        Integer.parseInt(prop.getProperty("sparql_max_concurrent_queries", String.valueOf(parallelism))),
+                        Long.parseLong(prop.getProperty("sparql_admission_wait_ms", DEFAULT_SPARQL_ADMISSION_WAIT_MS)),
+                        Long.parseLong(prop.getProperty("sparql_timeout_ms", DEFAULT_SPARQL_TIMEOUT_MS)))
+                        .reloadOnChange(source -> {
+                            if (Files.isDirectory(source)) return TdbStore.reconnect(source);
+
+                            // the new graph is loaded next to the one being served, which is dropped once swapped.
+                            Model m = ModelFactory.createModelForGraph(newGraph());
+                            RdfSnapshot.read(m, source);
+                            return DatasetFactory.wrap(m);
+                        }, Long.parseLong(prop.getProperty("sparql_reload_check_ms", DEFAULT_SPARQL_RELOAD_CHECK_MS)))
+                        .start(sparqlPort);
+
+                org.hypergraphql.Application.main(new String[]{"--config", config.write()});
             } else {
                 throw new UnsupportedOperationException("Non-build modes are not yet supported");
             }
@@ -128,6 +379,250 @@ public class App {
             System.err.println("  Example: java App" + parser.printExample(ALL));
         } catch (Exception e) {
             e.printStackTrace();
+            if (run != null) run.put("status", "failed : " + e);
+        } finally {
+            if (pool != null) pool.close();
+            closeEntrezCache();
+            if (run != null) writeRunReport(run);
+        }
+    }
+
+    private Map<String, Object> runInfo(String[] args) {
+        Map<String, Object> run = new LinkedHashMap<>();
+
+        run.put("mode", mode.toString());
+        run.put("args", Arrays.asList(args));
+        run.put("started", java.time.Instant.now().toString());
+        run.put("parallelism", parallelism);
+        run.put("processors", Runtime.getRuntime().availableProcessors());
+        run.put("java", System.getProperty("java.version"));
+        run.put("status", "succeeded");
+
+        return run;
+    }
+
+    private void writeRunReport(Map<String, Object> run) {
+        Metrics.REGISTRY.stopHeapSampler();
+
+        java.time.Instant started = java.time.Instant.parse((String) run.get("started")), finished = java.time.Instant.now();
+        run.put("finished", finished.toString());
+        run.put("wall_ms", java.time.Duration.between(started, finished).toMillis());
+
+        try {
+            Metrics.REGISTRY.writeReport(Path.of(runReport), run);
+        } catch (IOException e) {
+            System.err.println("Sorry, couldn't write the run report " + runReport + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the stages' triples, then the MeSH labels, as shards. Stages are read in declaration order.
+     */
+    private void writeShards(Map<String, TripleSpool> spools, long sortMemory) throws IOException {
+        Map<String, Consumer<StreamRDF>> sources = new LinkedHashMap<>();
+
+        if (outOfCore) {
+            // one source : triples of all stages are de-duplicated together.
+            sources.put("graph", out -> {
+                try {
+                    mergeSorted(spools, out, sortMemory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } else {
+            for (Map.Entry<String, TripleSpool> e : spools.entrySet()) {
+                sources.put(e.getKey(), e.getValue()::mergeInto);
+                Metrics.REGISTRY.triples(e.getValue().size());
+            }
+            sources.put("mesh_labels", this::addMeSHLabels);
+        }
+
+        new ShardedOutput(Path.of(shardDir), shards, shardGzip, shardPartition,
+                Long.parseLong(prop.getProperty("shard_max_triples", DEFAULT_SHARD_MAX_TRIPLES)),
+                Long.parseLong(prop.getProperty("shard_max_mb", DEFAULT_SHARD_MAX_MB)) << 20).write(sources);
+
+        for (TripleSpool spool : spools.values()) spool.close();
+
+        // an earlier BUILD's single file would otherwise still be loaded by cli, batch and server modes.
+        for (Path stale : List.of(Path.of(output), RdfSnapshot.of(Path.of(output))))
+            if (Files.deleteIfExists(stale)) System.out.println("Deleted " + stale + ", the output is sharded in " + shardDir);
+    }
+
+    /**
+     * Out of core, merges the sorted runs of all stages and of the MeSH labels into 'out', each distinct triple once.
+     */
+    private void mergeSorted(Map<String, TripleSpool> spools, StreamRDF out, long sortMemory) throws IOException {
+        long start = System.currentTimeMillis();
+        List<TripleSorter> sorters = new ArrayList<>();
+
+        try (TripleSorter labels = new TripleSorter(spoolDir, "mesh_labels", terms, sortMemory)) {
+            meshLabels.forEach(labels::add);
+            labels.seal();
+
+            for (TripleSpool spool : spools.values()) sorters.add(spool.sorter());
+            sorters.add(labels);
+
+            long added = 0, runs = 0;
+            for (TripleSorter s : sorters) {
+                added += s.added();
+                runs += s.runs();
+            }
+
+            long written = TripleSorter.mergeUnique(sorters, terms, out);
+
+            Metrics.REGISTRY.triples(written);
+            Metrics.REGISTRY.count("out_of_core.triples_added", added);
+            Metrics.REGISTRY.count("out_of_core.runs", runs);
+            Metrics.REGISTRY.count("out_of_core.terms", terms.size());
+
+            System.out.println("Out of core merge : " + added + " triples added, " + terms.size() + " terms, " + runs
+                    + " sorted runs merged into " + written + " distinct triples in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            for (TripleSpool spool : spools.values()) spool.close();
+        }
+    }
+
+    /**
+     * The BUILD output : its N-Triples file, or its shards.
+     */
+    private Path[] outputFiles() throws IOException {
+        return shards > 0 ? ShardedOutput.files(Path.of(shardDir)).toArray(new Path[0]) : new Path[]{Path.of(output)};
+    }
+
+    private void writeAdjacencyIndex() throws IOException {
+        long start = System.currentTimeMillis();
+        AdjacencyIndex index = AdjacencyIndex.build(outputFiles());
+
+        index.write(Path.of(adjacencyIndex));
+
+        StringJoiner counts = new StringJoiner(", ");
+        for (AdjacencyIndex.Relation r : AdjacencyIndex.Relation.values()) counts.add(r.label + "=" + index.edges(r));
+
+        System.out.println("Adjacency index " + adjacencyIndex + " : " + counts + ", written in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Answers -t, -p, -s, -d and the ids of -ids from the adjacency index. An id of -ids is looked up as every kind
+     * it is known as, e.g. a number can be both a PubMed and a gene id.
+     */
+    private void lookupIds() throws IOException {
+        if (adjacencyIndex == null)
+            throw new RuntimeException("Sorry, lookups are answered from the adjacency index, pass the -ix a BUILD wrote");
+
+        long start = System.nanoTime();
+        AdjacencyIndex index = AdjacencyIndex.read(Path.of(adjacencyIndex));
+        long loaded = System.nanoTime();
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_BYTES), false);
+        int ids = 0, missing = 0;
+
+        Map<String, AdjacencyIndex.Kind> given = new LinkedHashMap<>();
+        if (trial != null) given.put(trial, AdjacencyIndex.Kind.TRIAL);
+        if (article != null) given.put(article, AdjacencyIndex.Kind.ARTICLE);
+        if (symptom != null) given.put(symptom, AdjacencyIndex.Kind.MESH);
+        if (disease != null) given.put(disease, AdjacencyIndex.Kind.MESH);
+
+        for (Map.Entry<String, AdjacencyIndex.Kind> e : given.entrySet()) {
+            ids++;
+            if (index.lookup(e.getValue(), e.getKey().trim(), out) < 0) missing++;
+        }
+
+        if (idsFile != null) try (BufferedReader br = new BufferedReader(new FileReader(idsFile))) {
+            String line;
+
+            while ((line = br.readLine()) != null) {
+                String id = line.trim();
+                if (id.isEmpty()) continue;
+
+                boolean found = false;
+                for (AdjacencyIndex.Kind k : AdjacencyIndex.Kind.values()) found |= index.lookup(k, id, out) >= 0;
+
+                ids++;
+                if (!found) missing++;
+            }
+        }
+
+        out.flush();
+
+        long end = System.nanoTime();
+        System.err.println("Index loaded in " + (loaded - start) / 1_000_000 + " ms, " + ids + " ids (" + missing
+                + " not found) looked up in " + (end - loaded) / 1_000 + " us, "
+                + (ids == 0 ? 0 : (end - loaded) / 1_000 / ids) + " us per id");
+    }
+
+    private static void printResults(org.apache.jena.query.ResultSet rs) {
+        System.out.println("Results: ") ;
+        System.out.println("-------- ") ;
+        while (rs.hasNext()) {
+            QuerySolution rb = rs.nextSolution() ;
+
+            List<String> v = new ArrayList<>();
+            rb.varNames().forEachRemaining(v::add);
+
+            for (String s: v) System.out.println(rb.get(s));
+        }
+    }
+
+    /**
+     * Trials of a browse_* stage to re-link, null to re-link all of them (not incremental, or nothing to compare with).
+     */
+    private Set<String> changedTrials(String stage, String queryKey, String dependsOn) {
+        if (incrementalBuild == null) return null;
+
+        return incrementalBuild.changedTrials(stage, prop.getProperty(queryKey), dependsOn);
+    }
+
+    private boolean unchanged(String stage, Supplier<String> fingerprint) {
+        return incrementalBuild != null && incrementalBuild.unchanged(stage, fingerprint.get());
+    }
+
+    /**
+     * Stage spools become the new checkpoint snapshots, MeSH labels accumulate across runs. The output is the
+     * concatenation of the snapshots and the delta from the previous run is written as an RDF Patch.
+     */
+    private void finishIncremental(Map<String, TripleSpool> spools, Path spoolDir) throws IOException {
+        Path labels = spoolDir.resolve("mesh_labels.nt");
+
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(labels), OUTPUT_BUFFER_BYTES)) {
+            StreamRDF out = StreamRDFWriter.getWriterStream(os, Lang.NT);
+
+            out.start();
+            addMeSHLabels(out);
+            out.finish();
+        }
+
+        for (Map.Entry<String, TripleSpool> e : spools.entrySet()) {
+            incrementalBuild.commitStage(e.getKey(), e.getValue().file());
+            e.getValue().close();
+        }
+
+        incrementalBuild.accumulate("mesh_labels");
+        incrementalBuild.commitStage("mesh_labels", labels);
+        Files.delete(labels);
+
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(output), OUTPUT_BUFFER_BYTES)) {
+            incrementalBuild.finish(os, Path.of(deltaPatch));
+        }
+    }
+
+    private EntrezClient createEntrezClient() {
+        String apiKey = prop.getProperty("ENTREZ_API_KEY");
+        boolean withKey = apiKey != null && !apiKey.isEmpty();
+        // NCBI allows 3 requests per second without an API key and 10 with one.
+        double rps = Double.parseDouble(prop.getProperty("ENTREZ_REQUESTS_PER_SECOND", withKey ? "10" : "3"));
+
+        return new EntrezClient(prop.getProperty("ENTREZ_BASE_URL", EntrezClient.DEFAULT_BASE_URL), apiKey, rps,
+                Integer.parseInt(prop.getProperty("ENTREZ_CONCURRENCY", "8")));
+    }
+
+    private void closeEntrezCache() {
+        try {
+            if (entrezCache != null) entrezCache.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -137,135 +632,293 @@ public class App {
         ClassLoader cl = App.class.getClassLoader();
         prop = readProperties(cl);
 
-        Model model = ModelFactory.createDefaultModel();
+        Model model = ModelFactory.createModelForGraph(newGraph());
         FileManager.getInternal().addLocatorClassLoader(cl);
 
         System.out.println(Arrays.toString(args));
         System.out.println(mode);
+
+        if (meshVocab != null) System.out.println("-v is deprecated and ignored, " + meshVocab + " isn't read any more");
+
         return model;
     }
 
-    private void addPhenotypeGenotypes(Model model, Model meshModel) {
-        String line = "";
-        Property pGene = model.createProperty( NAMED_EDGE +"Gene");
-        Property pGeneID = model.createProperty( NAMED_EDGE +"GeneID");
+    private Graph newGraph() {
+        return compactGraph ? new CompactGraph() : GraphFactory.createDefaultGraph();
+    }
 
+    private void addPhenotypeGenotypes(StreamRDF out, MeSHDictionary meshDict) {
         try (BufferedReader br = new BufferedReader(new FileReader(phegeni));) {
+            addPhenotypeGenotypes(br, meshDict, out, this::addMeSHLabel);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Sorry, couldn't read MeSH co-occurrence links");
+        }
+    }
 
-            while((line = br.readLine())!= null) {
-                String trait = line.split(TAB)[1];
-                String geneId1 = line.split(TAB)[5];
-                String geneId2 = line.split(TAB)[7];
+    /**
+     * Links the genes of PheGenI lines to their trait's MeSH term. Label statements of the terms found go to 'labels'.
+     */
+    static void addPhenotypeGenotypes(BufferedReader br, MeSHDictionary meshDict, StreamRDF out,
+                                      Consumer<Triple> labels) throws IOException {
+        String line = "";
+        Node pGene = NodeFactory.createURI( NAMED_EDGE +"Gene");
+        Node pGeneID = NodeFactory.createURI( NAMED_EDGE +"GeneID");
+        BitSet genes = new BitSet();
+        long lines = 0;
 
-                StmtIterator si = findStatements(meshModel, trait);
+        while((line = br.readLine())!= null) {
+            lines++;
+            String[] fields = line.split(TAB);
+            String trait = fields[1];
+            String geneId1 = fields[5];
+            String geneId2 = fields[7];
 
-                if (si.hasNext()) {
-                    Statement s = si.nextStatement();
-                    Resource rId1 = RESOURCE.GENE_ID.createResource(model, geneId1);
-                    Resource rId2 = RESOURCE.GENE_ID.createResource(model, geneId2);
+            Triple s = findStatement(meshDict, trait, null);
 
-                    model.add(s);
+            if (s != null) {
+                Node rId1 = RESOURCE.GENE_ID.createNode(geneId1);
+                Node rId2 = RESOURCE.GENE_ID.createNode(geneId2);
 
-                    model.add(rId1, pGeneID, geneId1);
-                    model.add(rId1, pGene, s.getSubject());
+                labels.accept(s);
 
-                    model.add(rId2, pGeneID, geneId2);
-                    model.add(rId2, pGene, s.getSubject());
-                }
-            }
+                if (firstSeen(genes, geneId1)) out.triple(Triple.create(rId1, pGeneID, NodeFactory.createLiteral(geneId1)));
+                out.triple(Triple.create(rId1, pGene, s.getSubject()));
 
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Sorry, couldn't read MeSH co-occurrence links");
+                if (firstSeen(genes, geneId2)) out.triple(Triple.create(rId2, pGeneID, NodeFactory.createLiteral(geneId2)));
+                out.triple(Triple.create(rId2, pGene, s.getSubject()));
+            }
         }
+
+        Metrics.REGISTRY.rows(lines);
+        Metrics.REGISTRY.count("phegeni.lines", lines);
     }
 
-    private StmtIterator findStatements(Model meshModel, String literalValue) {
-        Literal literal = meshModel.createLiteral(literalValue, "en");
-        Selector selector = new SimpleSelector(null, null, literal);
-        return meshModel.listStatements(selector);
+    static Triple findStatement(MeSHDictionary meshDict, String term, String downcaseTerm) {
+        MeSHDictionary.Entry e = meshDict.lookup(term, downcaseTerm);
+
+        (e == null ? MESH_LOOKUP_MISSES : MESH_LOOKUP_HITS).increment();
+
+        if (e == null) return null;
+
+        return Triple.create(NodeFactory.createURI(e.subject), NodeFactory.createURI(e.predicate),
+                NodeFactory.createLiteral(e.label, "en"));
     }
 
-    private void addMeSHCoOccurrences(Model model, Model meshModel) { //TODO: we will use mesHModel more appropriately soon to pick the RDF node directly from there.
-        Property pMeSHDUI = model.createProperty( NAMED_EDGE +"MeSH_DUI");
-        String qAllArticles = prop.getProperty("all_articles");
-        String line = "";
+    /**
+     * The same MeSH label statement is found again for every trial, intervention or trait using it, from several
+     * stages at once. They are collected here and written once, in a stable order, after all stages.
+     */
+    private void addMeSHLabel(Triple s) {
+        meshLabels.add(s);
+    }
+
+    private void addMeSHLabels(StreamRDF out) {
+        meshLabels.stream()
+                .sorted(Comparator.comparing((Triple t) -> t.getSubject().getURI())
+                        .thenComparing(t -> t.getPredicate().getURI())
+                        .thenComparing(t -> t.getObject().getLiteralLexicalForm()))
+                .forEachOrdered(out::triple);
+    }
+
+    /**
+     * Writes the MeSH subjects the graph links to, what they reach through the 'mesh_subset_closure' predicates, and
+     * all their triples. Incremental, the subjects are those of the accumulated MeSH labels.
+     */
+    private void writeMeSHSubset() throws IOException {
+        Set<String> seeds = new HashSet<>();
+
+        if (incremental) try (BufferedReader br = Files.newBufferedReader(incrementalBuild.snapshotOf("mesh_labels"))) {
+            for (String line = br.readLine(); line != null; line = br.readLine())
+                seeds.add(IncrementalBuild.subjectOf(line));
+        }
+        else for (Triple t : meshLabels) seeds.add(t.getSubject().getURI());
+
+        List<String> closure = new ArrayList<>();
+        for (String p : prop.getProperty("mesh_subset_closure", DEFAULT_MESH_SUBSET_CLOSURE).split(","))
+            if (!p.isBlank()) closure.add(p.trim());
 
-        try (BufferedReader br = new BufferedReader(new FileReader(mrcoc));
-             Connection conn = DriverManager.getConnection(prop.getProperty("aact_url"),
-                     prop.getProperty("user"), prop.getProperty("password"));
-             PreparedStatement sAllArticles = conn.prepareStatement(qAllArticles); ) {
+        MeSHSubset.Stats stats = new MeSHSubset(Path.of(meshRDF), closure, parallelism).extract(seeds, Path.of(meshSubset));
 
-            ResultSet resultSet = sAllArticles.executeQuery();
+        Metrics.REGISTRY.count("mesh_subset.subjects", stats.subjects);
+        Metrics.REGISTRY.count("mesh_subset.triples", stats.triples);
+        System.out.println("MeSH subset " + meshSubset + " : " + stats);
+    }
+
+    /**
+     * Numeric ids (PubMed, Gene) are tracked in a bit set so repeated label statements aren't streamed out twice.
+     */
+    private static boolean firstSeen(BitSet seen, String id) {
+        try {
+            int i = Integer.parseInt(id.trim());
+
+            if (i < 0) return true;
+            if (seen.get(i)) return false;
 
-            while (resultSet.next()) {
-                String article = resultSet.getString("article");
+            seen.set(i);
+        } catch (NumberFormatException e) {
+            // not a numeric id, let the writer see the repeat.
+        }
+
+        return true;
+    }
 
-                if(line != null && !article.equals(line.split(PIPE)[0]))
-                    while((line = br.readLine())!= null) if (article.equals(line.split(PIPE)[0])) break;
+    /**
+     * PubMed ids to join with MRCOC : all of them, or in an incremental BUILD those linked to trials since the
+     * checkpoint. An article's co-occurrences only depend on MRCOC, so with MRCOC unchanged the others are kept from
+     * the checkpoint, and those of articles no longer linked are dropped from it.
+     */
+    private int[] coOccurrenceArticles() {
+        int[] articles = allArticles();
 
-                if (line == null) break;
+        if (incrementalBuild == null) return articles;
 
-                do {
-                    String[] ids = line.split(PIPE);
+        Map<String, String> linked = new HashMap<>();
+        for (int a : articles) linked.put(String.valueOf(a), "");
 
-                    Resource r = RESOURCE.PUBMED_ARTICLE.createResource(model, ids[0]);
-                    Resource dui1 = RESOURCE.MESH_DUI.createResource(model, ids[1]);
-                    Resource dui2 = RESOURCE.MESH_DUI.createResource(model, ids[2]);
+        Set<String> changed = incrementalBuild.changedKeys("co_occurrences", linked,
+                incrementalBuild.fileDigest(Path.of(mrcoc)), RESOURCE.PUBMED_ARTICLE::uri, "articles");
 
-                    model.add(r, pMeSHDUI, dui1);
-                    model.add(r, pMeSHDUI, dui2);
+        return changed == null ? articles : Arrays.stream(articles).filter(a -> changed.contains(String.valueOf(a))).toArray();
+    }
+
+    /**
+     * @param articles PubMed ids, sorted and distinct.
+     */
+    private void addMeSHCoOccurrences(StreamRDF out, int[] articles) {
+        Node pMeSHDUI = NodeFactory.createURI( NAMED_EDGE +"MeSH_DUI");
+        Map<Integer, TripleSpool> partitions = new ConcurrentHashMap<>();
+
+        if (articles.length == 0) return;
+
+        try {
+            MrcocJoin.Stats stats = new MrcocJoin(Path.of(mrcoc), articles, parallelism).run(partition -> {
+                TripleSpool spool = spoolDir == null ? TripleSpool.inMemory(newGraph())
+                        : TripleSpool.onDisk(spoolDir, "co_occurrences_" + partition);
+                partitions.put(partition, spool);
+
+                try {
+                    StreamRDF sink = spool.sink();
+                    Map<Long, Node> duiNodes = new HashMap<>();
+                    sink.start();
+
+                    return new MrcocJoin.Emitter() {
+                        private int last = -1;
+                        private Node article = null;
+
+                        @Override
+                        public void emit(int a, long dui) {
+                            if (a != last) {
+                                article = RESOURCE.PUBMED_ARTICLE.createNode(String.valueOf(a));
+                                last = a;
+                            }
+
+                            Node d = duiNodes.computeIfAbsent(dui, k -> RESOURCE.MESH_DUI.createNode(MrcocJoin.decodeDui(k)));
+                            sink.triple(Triple.create(article, pMeSHDUI, d));
+                        }
+
+                        @Override
+                        public void finish() {
+                            sink.finish();
+                            try {
+                                spool.seal();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    };
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
 
-                    line = br.readLine();
-                } while (line!= null && article.equals(line.split(PIPE)[0]));
+            // partitions are article id ranges, merged in order.
+            for (int i = 0; i < partitions.size(); i++) {
+                TripleSpool spool = partitions.get(i);
+                spool.mergeInto(out);
+                spool.close();
             }
+
+            System.out.println("MRCOC join : " + stats);
+
+            Metrics.REGISTRY.rows(stats.lines);
+            Metrics.REGISTRY.count("mrcoc.lines", stats.lines);
+            Metrics.REGISTRY.count("mrcoc.matched", stats.matched);
+            Metrics.REGISTRY.count("mrcoc.out_of_order", stats.outOfOrder);
+            Metrics.REGISTRY.count("mrcoc.malformed", stats.malformed);
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Sorry, couldn't read MeSH co-occurrence links");
+        }
+    }
+
+    /**
+     * PubMed ids linked to trials, sorted and distinct.
+     */
+    private int[] allArticles() {
+        int[][] articles = {new int[1 << 16]};
+        int[] n = {0};
+
+        try {
+            bulkReader.scan("all_articles", prop.getProperty("all_articles"), rs -> {
+                if (n[0] == articles[0].length) articles[0] = Arrays.copyOf(articles[0], n[0] * 2);
+                articles[0][n[0]++] = rs.getInt("article");
+            });
         } catch (SQLException e) {
             System.err.format("SQL State: %s\n%s", e.getSQLState(), e.getMessage());
             throw new RuntimeException("Sorry, unable to connect to database");
         } catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Sorry, couldn't read MeSH co-occurrence links");
+            throw new UncheckedIOException(e);
         }
+
+        int[] a = articles[0];
+        Arrays.sort(a, 0, n[0]);
+
+        int distinct = 0;
+        for (int i = 0; i < n[0]; i++) if (distinct == 0 || a[i] != a[distinct - 1]) a[distinct++] = a[i];
+
+        return Arrays.copyOf(a, distinct);
     }
 
-    private void addAllTrials(Model model) {
-        Property pType = model.createProperty( RDF_SYNTAX_NS_TYPE);
-        Property pTrialId = model.createProperty( RDF_SCHEMA_LABEL);
+    private void addAllTrials(StreamRDF out) {
+        Node pType = NodeFactory.createURI( RDF_SYNTAX_NS_TYPE);
+        Node pTrialId = NodeFactory.createURI( RDF_SCHEMA_LABEL);
 
         String qTrialIds = prop.getProperty("trial_ids");
         String qTrialArticles = prop.getProperty("select_trial_articles");
-        Resource nsTypeResource = RESOURCE.NS_TYPE.createResource(model, "");
+        Node nsTypeResource = RESOURCE.NS_TYPE.createNode("");
+        BitSet articlesSeen = new BitSet();
+        List<String> toSearch = new ArrayList<>();
 
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(trials));
-                Connection conn = DriverManager.getConnection(prop.getProperty("aact_url"),
-                     prop.getProperty("user"), prop.getProperty("password"));
-                PreparedStatement sTrialIds = conn.prepareStatement(qTrialIds);
-                PreparedStatement sTrialArticles = conn.prepareStatement(qTrialArticles); ) {
-
-            ResultSet resultSet = sTrialIds.executeQuery();
+                TrialArticleWriter writer = new TrialArticleWriter(pool, prop.getProperty("insert_trial_articles"),
+                        Integer.parseInt(prop.getProperty("insert_trial_articles_batch_size", DEFAULT_BATCH_SIZE))); ) {
 
-            while (resultSet.next()) {
+            bulkReader.scan("trial_ids", qTrialIds, resultSet -> {
                 String trialId = resultSet.getString("trial_id");
-                Resource r = RESOURCE.TRIAL.createResource(model, trialId);
+                Node r = RESOURCE.TRIAL.createNode(trialId);
 
-                model.add(r, pType, nsTypeResource);
-                model.add(r, pTrialId, trialId);
+                out.triple(Triple.create(r, pType, nsTypeResource));
+                out.triple(Triple.create(r, pTrialId, NodeFactory.createLiteral(trialId)));
 
                 bw.write(trialId + "\n");
 
-                insertTrialArticles(trialId);
-            }
+                if (!entrezCache.attempted(trialId)) toSearch.add(trialId);
+            });
+
+            insertTrialArticles(toSearch, writer);
 
-            resultSet = sTrialArticles.executeQuery();
+            // everything fetched from Entrez has to be in trial_article before it is read back below.
+            writer.flush();
 
-            while (resultSet.next()) {
+            bulkReader.scan("select_trial_articles", qTrialArticles, resultSet -> {
                 String trial = resultSet.getString("trial");
                 Array pubmedArticles = resultSet.getArray("pubmed_articles");
 
                 Integer[] articles = (Integer[]) pubmedArticles.getArray();
 
-                addTrialArticles(model, trial, articles);
-            }
+                addTrialArticles(out, trial, articles, articlesSeen);
+            });
         } catch (SQLException e) {
             System.err.format("SQL State: %s\n%s", e.getSQLState(), e.getMessage());
             throw new RuntimeException("Sorry, unable to connect to database");
@@ -275,83 +928,74 @@ public class App {
         }
     }
 
-    private void addTrialArticles(Model model, String trial, Integer[] articles) {
-        Property pPubMedArticle = model.createProperty( NAMED_EDGE +"Pubmed_Article");
-        Property pArticleId = model.createProperty( RDF_SCHEMA_LABEL);
+    private void addTrialArticles(StreamRDF out, String trial, Integer[] articles, BitSet articlesSeen) {
+        Node pPubMedArticle = NodeFactory.createURI( NAMED_EDGE +"Pubmed_Article");
+        Node pArticleId = NodeFactory.createURI( RDF_SCHEMA_LABEL);
+        Node rTrial = RESOURCE.TRIAL.createNode(trial);
 
         for (Integer a : articles) {
-            Resource rArticle = RESOURCE.PUBMED_ARTICLE.createResource(model,String.valueOf(a));
-
-            model.add(rArticle, pArticleId, String.valueOf(a));
+            Node rArticle = RESOURCE.PUBMED_ARTICLE.createNode(String.valueOf(a));
 
-            Resource rTrial = RESOURCE.TRIAL.createResource(model, trial);
+            if (!articlesSeen.get(a)) {
+                articlesSeen.set(a);
+                out.triple(Triple.create(rArticle, pArticleId, NodeFactory.createLiteral(String.valueOf(a))));
+            }
 
-            model.add(rTrial, pPubMedArticle, rArticle);
+            out.triple(Triple.create(rTrial, pPubMedArticle, rArticle));
         }
     }
 
-    private void insertTrialArticles(String trialId) {
-        // constraining so that only a small number of Entrez API calls are made. TODO : Optimize this by checking if an id is already attempted before.
-        if (Math.random() > Double.parseDouble(prop.getProperty("ENTREZ_API_CALL_THRESHOLD"))) {
-            List<Integer> articles = EntrezClient.getPubMedIds(trialId).getIdList();
+    /**
+     * Looks up PubMed articles for trials never attempted before (see the Entrez cache), concurrently and within
+     * NCBI's rate limit. ENTREZ_API_CALL_THRESHOLD still allows sampling only a fraction of them.
+     */
+    private void insertTrialArticles(List<String> trialIds, TrialArticleWriter writer) {
+        double threshold = Double.parseDouble(prop.getProperty("ENTREZ_API_CALL_THRESHOLD", "0"));
+        List<String> sample = new ArrayList<>();
 
-            insertTrialPubMedArticles(trialId, articles);
-        }
-    }
-
-    private void insertTrialPubMedArticles(String trialId, List<Integer> s) {
-        try (Connection c = DriverManager.getConnection(prop.getProperty("aact_url"),
-                prop.getProperty("user"), prop.getProperty("password"));) {
-            PreparedStatement stmt = c.prepareStatement(prop.getProperty("insert_trial_articles"));
+        for (String trialId : trialIds) if (Math.random() >= threshold) sample.add(trialId);
 
-            Array array = c.createArrayOf("integer", s.toArray());
+        System.out.println("Entrez : " + entrezCache.size() + " trials cached, searching " + sample.size());
 
-            stmt.setString(1, trialId);
-            stmt.setArray(2, array);
+        entrezClient.searchAll(sample)
+                // writes run one at a time on a worker, off the event loop the other searches are waiting on.
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(e -> {
+                    List<Integer> articles = EntrezClient.idsOf(e.getValue());
 
-            stmt.execute();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Sorry, couldn't write to trials file or trials-articles database table");
-        }
+                    entrezCache.put(e.getKey(), articles);
+                    writer.add(e.getKey(), articles);
+                })
+                .blockLast();
     }
 
-    private void addTrialConditions(Model model, Model meshModel) {
+    private void addTrialConditions(StreamRDF out, MeSHDictionary meshDict, Set<String> onlyTrials) {
         String query = prop.getProperty("aact_browse_conditions");
-        Property p = model.createProperty( NAMED_EDGE +"Condition");
+        Node p = NodeFactory.createURI( NAMED_EDGE +"Condition");
 
-        addTrialToMeSHLinks(model, meshModel, query, p);
+        addTrialToMeSHLinks(out, meshDict, query, p, onlyTrials);
     }
 
-    private void addTrialInterventions(Model model, Model meshModel) {
+    private void addTrialInterventions(StreamRDF out, MeSHDictionary meshDict, Set<String> onlyTrials) {
         String query = prop.getProperty("aact_browse_interventions");
-        Property p = model.createProperty( NAMED_EDGE +"Intervention");
+        Node p = NodeFactory.createURI( NAMED_EDGE +"Intervention");
 
-        addTrialToMeSHLinks(model, meshModel, query, p);
+        addTrialToMeSHLinks(out, meshDict, query, p, onlyTrials);
     }
 
-    private void addTrialToMeSHLinks(Model model, Model meshModel, String query, Property p) {
-        try (Connection conn = DriverManager.getConnection(prop.getProperty("aact_url"),
-                prop.getProperty("user"), prop.getProperty("password"));
-             PreparedStatement preparedStatement = conn.prepareStatement(query)) {
+    /**
+     * @param onlyTrials when not null, only rows of these trials are read (incremental BUILD).
+     */
+    private void addTrialToMeSHLinks(StreamRDF out, MeSHDictionary meshDict, String query, Node p, Set<String> onlyTrials) {
+        if (onlyTrials != null && onlyTrials.isEmpty()) return;
 
-            ResultSet resultSet = preparedStatement.executeQuery();
+        if (onlyTrials != null) query = "select * from (" + BulkReader.strip(query) + ") q where nct_id = any(?)";
 
-            while (resultSet.next()) {
-                String trialId = resultSet.getString("nct_id");
-                String conditionMeSHTerm = resultSet.getString("mesh_term");
+        BulkReader.Binder binder = onlyTrials == null ? null
+                : (conn, s) -> s.setArray(1, conn.createArrayOf("varchar", onlyTrials.toArray()));
 
-                Resource r = RESOURCE.TRIAL.createResource(model, trialId);
-
-                StmtIterator si = findStatements(meshModel, conditionMeSHTerm);
-
-                if (si.hasNext()) {
-                    Statement s = si.nextStatement();
-
-                    model.add(s);
-                    model.add(r, p, s.getSubject());
-                }
-            }
+        try {
+            addTrialToMeSHLinks(bulkReader, query, binder, meshDict, p, out, this::addMeSHLabel);
         } catch (SQLException e) {
             System.err.format("SQL State: %s\n%s", e.getSQLState(), e.getMessage());
             throw new RuntimeException("Sorry, unable to connect to database");
@@ -361,6 +1005,28 @@ public class App {
         }
     }
 
+    /**
+     * Links the trials of 'browse_*' rows (nct_id, mesh_term, downcase_mesh_term) to their MeSH term by 'p'. Label
+     * statements of the terms found go to 'labels'.
+     */
+    static long addTrialToMeSHLinks(BulkReader reader, String query, BulkReader.Binder binder, MeSHDictionary meshDict,
+                                    Node p, StreamRDF out, Consumer<Triple> labels) throws SQLException, IOException {
+        return reader.scan(p.getLocalName(), query, binder, resultSet -> {
+            String trialId = resultSet.getString("nct_id");
+            String conditionMeSHTerm = resultSet.getString("mesh_term");
+            String downcaseMeSHTerm = resultSet.getString("downcase_mesh_term");
+
+            Node r = RESOURCE.TRIAL.createNode(trialId);
+
+            Triple s = findStatement(meshDict, conditionMeSHTerm, downcaseMeSHTerm);
+
+            if (s != null) {
+                labels.accept(s);
+                out.triple(Triple.create(r, p, s.getSubject()));
+            }
+        });
+    }
+
     private Properties readProperties(ClassLoader cl) {
         try (InputStream input = cl.getResourceAsStream("config.properties")) {
 
@@ -0,0 +1,222 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.*;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.OUTPUT_BUFFER_BYTES;
+
+/**
+ * Runs many SPARQL queries against one dataset loaded once, 'parallelism' at a time, each streaming its results into
+ * its own file of the results directory : '<query name>.csv', '.tsv' or '.srj' (SPARQL JSON), '.nt' for CONSTRUCT
+ * and DESCRIBE. Rows are written as the query produces them, nothing is held in memory. A query failing or running
+ * past 'timeoutMs' leaves no result file and doesn't stop the others. 'summary.tsv' lists every query with its
+ * status, row count and wall time.
+ *
+ * The dataset is only read, so the queries share it : each one runs in its own read transaction when the dataset
+ * supports them (TDB2), directly on the in-memory graph otherwise.
+ */
+class BatchQueries {
+    enum Format {
+        CSV("csv"), TSV("tsv"), JSON("srj");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    static class Result {
+        final String name;
+        long rows;
+        long millis;
+        String error;
+
+        Result(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Dataset dataset;
+    private final Path resultsDir;
+    private final Format format;
+    private final int parallelism;
+    private final long timeoutMs;
+
+    BatchQueries(Dataset dataset, Path resultsDir, Format format, int parallelism, long timeoutMs) {
+        this.dataset = dataset;
+        this.resultsDir = resultsDir;
+        this.format = format;
+        this.parallelism = Math.max(1, parallelism);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * The '.rq' files of a directory in name order, the file itself when it is a '.rq' file, else the files listed in
+     * it one per line (blank lines and '#' comments skipped, relative paths resolved against the list's directory).
+     */
+    static List<Path> queries(Path dirOrList) throws IOException {
+        if (Files.isDirectory(dirOrList)) try (Stream<Path> files = Files.list(dirOrList)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".rq")).sorted().toList();
+        }
+
+        if (dirOrList.getFileName().toString().endsWith(".rq")) return List.of(dirOrList);
+
+        List<Path> queries = new ArrayList<>();
+        Path base = dirOrList.toAbsolutePath().getParent();
+
+        for (String line : Files.readAllLines(dirOrList, StandardCharsets.UTF_8))
+            if (!line.isBlank() && !line.trim().startsWith("#")) queries.add(base.resolve(line.trim()));
+
+        return queries;
+    }
+
+    /**
+     * @return a result per query, in the order of 'queries'.
+     */
+    List<Result> run(List<Path> queries) throws IOException {
+        Set<String> names = new HashSet<>();
+        for (Path q : queries)
+            if (!names.add(nameOf(q))) throw new RuntimeException("Sorry, more than one query is named " + nameOf(q));
+
+        Files.createDirectories(resultsDir);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, queries.size())));
+        List<Future<Result>> futures = new ArrayList<>();
+        List<Result> results = new ArrayList<>();
+
+        try {
+            for (Path q : queries) futures.add(executor.submit(() -> run(q)));
+
+            for (Future<Result> f : futures) results.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sorry, interrupted while running queries", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Sorry, couldn't run queries", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        writeSummary(results);
+
+        return results;
+    }
+
+    private static String nameOf(Path query) {
+        String name = query.getFileName().toString();
+
+        return name.endsWith(".rq") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    private Result run(Path queryFile) {
+        Result r = new Result(nameOf(queryFile));
+        long start = System.nanoTime();
+        Path out = null, tmp = null;
+
+        try {
+            Query q = QueryFactory.read(queryFile.toString());
+            out = resultsDir.resolve(r.name + "." + (q.isConstructType() || q.isDescribeType() ? "nt" : format.extension));
+            tmp = out.resolveSibling(out.getFileName() + ".tmp");
+
+            Path written = tmp;
+            Metrics.REGISTRY.stage("query." + r.name, () -> r.rows = execute(q, written));
+
+            Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            r.error = e.getClass().getSimpleName() + (e.getMessage() == null ? "" : " : " + e.getMessage());
+            Metrics.REGISTRY.count("batch.failed", 1);
+        } finally {
+            r.millis = (System.nanoTime() - start) / 1_000_000;
+
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                System.err.println("Couldn't delete " + tmp + " : " + e.getMessage());
+            }
+        }
+
+        Metrics.REGISTRY.record("batch.query_ms", r.millis);
+        System.out.println(r.name + (r.error == null ? " : " + r.rows + " rows" : " failed, " + r.error) + " in "
+                + r.millis + " ms");
+
+        return r;
+    }
+
+    /**
+     * @return the rows (triples for CONSTRUCT and DESCRIBE) written.
+     */
+    private long execute(Query q, Path out) throws IOException {
+        boolean txn = dataset.supportsTransactions();
+
+        if (txn) dataset.begin(ReadWrite.READ);
+
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(out), OUTPUT_BUFFER_BYTES);
+             QueryExecution qexec = QueryExecution.create().query(q).dataset(dataset)
+                     .timeout(timeoutMs, TimeUnit.MILLISECONDS).build()) {
+            if (q.isSelectType()) {
+                ResultSet rs = qexec.execSelect();
+
+                switch (format) {
+                    case CSV: ResultSetFormatter.outputAsCSV(os, rs); break;
+                    case TSV: ResultSetFormatter.outputAsTSV(os, rs); break;
+                    default: ResultSetFormatter.outputAsJSON(os, rs);
+                }
+
+                return rs.getRowNumber();
+            }
+
+            if (q.isAskType()) {
+                boolean answer = qexec.execAsk();
+
+                switch (format) {
+                    case CSV: ResultSetFormatter.outputAsCSV(os, answer); break;
+                    case TSV: ResultSetFormatter.outputAsTSV(os, answer); break;
+                    default: ResultSetFormatter.outputAsJSON(os, answer);
+                }
+
+                return 1;
+            }
+
+            Iterator<Triple> triples = q.isConstructType() ? qexec.execConstructTriples() : qexec.execDescribeTriples();
+            StreamRDF writer = StreamRDFWriter.getWriterStream(os, Lang.NT);
+            long n = 0;
+
+            writer.start();
+            while (triples.hasNext()) {
+                writer.triple(triples.next());
+                n++;
+            }
+            writer.finish();
+
+            return n;
+        } finally {
+            if (txn) dataset.end();
+        }
+    }
+
+    private void writeSummary(List<Result> results) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(resultsDir.resolve("summary.tsv"), StandardCharsets.UTF_8))) {
+            w.println("query\tstatus\trows\tms");
+
+            for (Result r : results)
+                w.println(r.name + "\t" + (r.error == null ? "ok" : r.error.replaceAll("\\s+", " ")) + "\t" + r.rows
+                        + "\t" + r.millis);
+        }
+    }
+}
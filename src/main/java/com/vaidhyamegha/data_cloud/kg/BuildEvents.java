@@ -0,0 +1,71 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder events of a BUILD, recorded only while a recording is running (e.g. java
+ * -XX:StartFlightRecording=filename=build.jfr ...) and otherwise close to free. They show next to the JVM's own GC,
+ * allocation and I/O events in JDK Mission Control.
+ */
+final class BuildEvents {
+
+    private BuildEvents() { }
+
+    @Name("com.vaidhyamegha.kg.Stage")
+    @Label("Build Stage")
+    @Category({"Knowledge Graph", "Build"})
+    @Description("A BUILD stage or phase, from start to end")
+    static class Stage extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Rows Read")
+        long rows;
+
+        @Label("Triples Emitted")
+        long triples;
+
+        @Label("JDBC Fetch Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long jdbcFetch;
+
+        @Label("JDBC Processing Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long jdbcProcess;
+
+        @Label("Heap High-Water Mark")
+        @DataAmount
+        long heapPeak;
+    }
+
+    @Name("com.vaidhyamegha.kg.JdbcScan")
+    @Label("JDBC Scan")
+    @Category({"Knowledge Graph", "JDBC"})
+    static class JdbcScan extends Event {
+        @Label("Query")
+        String query;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Fetch Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long fetch;
+
+        @Label("Processing Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long process;
+    }
+
+    @Name("com.vaidhyamegha.kg.EntrezRequest")
+    @Label("Entrez Request")
+    @Category({"Knowledge Graph", "Entrez"})
+    static class EntrezRequest extends Event {
+        @Label("Trial Id")
+        String trialId;
+
+        @Label("HTTP Status")
+        @Description("0 when no response was received")
+        int status;
+    }
+}
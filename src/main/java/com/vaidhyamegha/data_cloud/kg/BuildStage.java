@@ -0,0 +1,23 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A named unit of BUILD work that emits triples to the sink it is handed. Stages only share read-only inputs,
+ * so they can run concurrently once the stages they depend on are done.
+ */
+class BuildStage {
+    final String name;
+    final List<String> dependsOn;
+    final Consumer<StreamRDF> body;
+
+    BuildStage(String name, Consumer<StreamRDF> body, String... dependsOn) {
+        this.name = name;
+        this.body = body;
+        this.dependsOn = Arrays.asList(dependsOn);
+    }
+}
@@ -0,0 +1,102 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Streams the rows of a read query instead of letting the PostgreSQL driver buffer the whole result set first.
+ *
+ * The driver only uses a server-side cursor when auto-commit is off, the result set is forward only and a fetch size
+ * is set; rows then arrive 'fetchSize' at a time, so memory stays flat whatever the row count and the first row is
+ * handed over as soon as the first batch is fetched. Every scan takes its own pooled connection, so scans of
+ * concurrent BUILD stages run in parallel.
+ */
+class BulkReader {
+    interface Binder {
+        void bind(Connection c, PreparedStatement s) throws SQLException;
+    }
+
+    interface RowHandler {
+        void row(ResultSet rs) throws SQLException, IOException;
+    }
+
+    private final ConnectionPool pool;
+    private final int fetchSize;
+
+    BulkReader(ConnectionPool pool, int fetchSize) {
+        this.pool = pool;
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    long scan(String name, String query, RowHandler handler) throws SQLException, IOException {
+        return scan(name, query, null, handler);
+    }
+
+    /**
+     * @return the number of rows read.
+     */
+    long scan(String name, String query, Binder binder, RowHandler handler) throws SQLException, IOException {
+        long start = System.nanoTime(), first = -1, rows = 0, fetch = 0, process = 0;
+        BuildEvents.JdbcScan event = new BuildEvents.JdbcScan();
+        event.begin();
+
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            c.setReadOnly(true);
+
+            try (PreparedStatement s = c.prepareStatement(strip(query), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                s.setFetchSize(fetchSize);
+
+                if (binder != null) binder.bind(c, s);
+
+                // fetch : executing and moving the cursor, i.e. waiting on the database; process : the handler.
+                long t = System.nanoTime();
+
+                try (ResultSet rs = s.executeQuery()) {
+                    while (true) {
+                        boolean more = rs.next();
+                        long fetched = System.nanoTime();
+                        fetch += fetched - t;
+
+                        if (!more) break;
+                        if (first < 0) first = fetched;
+
+                        handler.row(rs);
+                        rows++;
+
+                        t = System.nanoTime();
+                        process += t - fetched;
+                    }
+                }
+            } finally {
+                // closes the cursor, the pool restores auto-commit and read-only on return.
+                c.rollback();
+            }
+        }
+
+        long end = System.nanoTime();
+        System.out.println("Scan " + name + " : " + rows + " rows, first after " + ((first < 0 ? end : first) - start) / 1_000_000
+                + " ms, " + (end - start) / 1_000_000 + " ms in all (fetch " + fetch / 1_000_000 + " ms, processing "
+                + process / 1_000_000 + " ms)");
+
+        Metrics.REGISTRY.scanned(name, rows, fetch, process);
+
+        event.query = name;
+        event.rows = rows;
+        event.fetch = fetch / 1_000_000;
+        event.process = process / 1_000_000;
+        event.commit();
+
+        return rows;
+    }
+
+    /**
+     * A cursor can't be declared over more than one statement, trailing semicolons are dropped.
+     */
+    static String strip(String query) {
+        return query.trim().replaceAll(";+$", "");
+    }
+}
@@ -0,0 +1,511 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.GraphEvents;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NullIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read optimised, dictionary encoded Jena graph : an alternative to the default graph for the BUILD model and spools,
+ * and the graphs CLI and SERVER load, several times smaller in heap.
+ *
+ * Every term is an int id. An IRI is held as the id of its namespace (the RdfSnapshot prefixes, i.e. the RESOURCE
+ * kinds and NAMED_EDGE, else what precedes its last '/' or '#') and its local part, a literal as its lexical form and
+ * the id of its language or datatype, both as UTF-8 bytes in one growing array. So "https://pubmed.ncbi.nlm.nih.gov/"
+ * is stored once, and an article's id once however many triples it is in.
+ *
+ * Triples are appended as they are added, then sorted on the first find into three arrays of (int, int, int) records
+ * in SPO, POS and OSP order, off-heap when they fit in a direct buffer. Every pattern is then a binary searched range of
+ * one of them : S, SP, SPO in SPO ; P, PO in POS ; O, OS in OSP. Triples added after that are merged in on the next
+ * find. Deleting isn't supported.
+ */
+class CompactGraph extends GraphBase {
+    private static final byte IRI = 0, LITERAL = 1, BLANK = 2;
+    private static final int SPO = 0, POS = 1, OSP = 2;
+    private static final int[][] ORDER = {{0, 1, 2}, {1, 2, 0}, {2, 0, 1}};
+    private static final int CACHED_NODES = 1 << 14;
+
+    private final Terms terms = new Terms();
+
+    // triples added since the last sort, as (s, p, o) ids.
+    private int[] pending = new int[3 * 1024];
+    private volatile int added = 0;
+
+    // SPO, POS and OSP records, each as many as there are distinct triples.
+    private volatile IntBuffer[] sorted = null;
+
+    @Override
+    public synchronized void performAdd(Triple t) {
+        if (3 * added == pending.length) pending = Arrays.copyOf(pending, 2 * pending.length);
+
+        pending[3 * added] = terms.add(t.getSubject());
+        pending[3 * added + 1] = terms.add(t.getPredicate());
+        pending[3 * added + 2] = terms.add(t.getObject());
+        added++;
+    }
+
+    @Override
+    public synchronized void clear() {
+        pending = new int[3 * 1024];
+        added = 0;
+        sorted = null;
+        getEventManager().notifyEvent(this, GraphEvents.removeAll);
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        IntBuffer[] idx = indexes();
+
+        return idx == null ? 0 : idx[SPO].limit() / 3;
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        IntBuffer[] idx = indexes();
+
+        if (idx == null) return NullIterator.instance();
+
+        Node s = pattern.getSubject(), p = pattern.getPredicate(), o = pattern.getObject();
+        int si = s.isConcrete() ? terms.find(s) : -1;
+        int pi = p.isConcrete() ? terms.find(p) : -1;
+        int oi = o.isConcrete() ? terms.find(o) : -1;
+
+        // a concrete term never added matches nothing.
+        if ((s.isConcrete() && si < 0) || (p.isConcrete() && pi < 0) || (o.isConcrete() && oi < 0))
+            return NullIterator.instance();
+
+        if (si >= 0 && (pi >= 0 || oi < 0)) return range(idx, SPO, si, pi, pi >= 0 ? oi : -1);
+        if (si >= 0) return range(idx, OSP, oi, si, -1);
+        if (pi >= 0) return range(idx, POS, pi, oi, -1);
+        if (oi >= 0) return range(idx, OSP, oi, -1, -1);
+
+        return range(idx, SPO, -1, -1, -1);
+    }
+
+    /**
+     * Triples of order 'order' whose leading ids are 'a', then 'b', then 'c' (-1 for any, only trailing).
+     */
+    private ExtendedIterator<Triple> range(IntBuffer[] idx, int order, int a, int b, int c) {
+        IntBuffer buf = idx[order];
+        int[] key = a < 0 ? new int[0] : b < 0 ? new int[]{a} : c < 0 ? new int[]{a, b} : new int[]{a, b, c};
+        int from = bound(buf, key, false), to = bound(buf, key, true);
+        int[] rotation = ORDER[order];
+
+        return WrappedIterator.create(new Iterator<Triple>() {
+            private int i = from;
+
+            @Override
+            public boolean hasNext() {
+                return i < to;
+            }
+
+            @Override
+            public Triple next() {
+                if (i >= to) throw new NoSuchElementException();
+
+                int[] spo = new int[3];
+                for (int k = 0; k < 3; k++) spo[rotation[k]] = buf.get(3 * i + k);
+                i++;
+
+                return Triple.create(terms.node(spo[0]), terms.node(spo[1]), terms.node(spo[2]));
+            }
+        });
+    }
+
+    /**
+     * First record whose leading fields are >= 'key' (> 'key' when 'upper').
+     */
+    private int bound(IntBuffer buf, int[] key, boolean upper) {
+        int lo = 0, hi = buf.limit() / 3;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1, c = 0;
+
+            for (int k = 0; k < key.length && c == 0; k++) c = Integer.compare(buf.get(3 * mid + k), key[k]);
+
+            if (c < 0 || (upper && c == 0)) lo = mid + 1;
+            else hi = mid;
+        }
+
+        return lo;
+    }
+
+    /**
+     * The sorted arrays, (re)built first when triples were added since. Null while the graph is empty.
+     */
+    private IntBuffer[] indexes() {
+        IntBuffer[] idx = sorted;
+
+        if (idx != null && added == 0) return idx;
+
+        synchronized (this) {
+            if (added > 0) build();
+
+            return sorted;
+        }
+    }
+
+    private void build() {
+        int size = sorted == null ? 0 : sorted[SPO].limit() / 3, n = size + added;
+
+        if (3L * n > Integer.MAX_VALUE - 8) throw new RuntimeException("Sorry, too many triples for a CompactGraph");
+
+        int[] spo = new int[3 * n];
+
+        // what was sorted already, then what was added since.
+        if (sorted != null) sorted[SPO].get(0, spo, 0, 3 * size);
+        System.arraycopy(pending, 0, spo, 3 * size, 3 * added);
+
+        IntBuffer[] idx = new IntBuffer[3];
+
+        for (int order = SPO; order <= OSP; order++) {
+            long[] records = pack(spo, n, ORDER[order]);
+
+            TripleSorter.sort(records, 0, n);
+            idx[order] = store(records, unique(records, n));
+        }
+
+        sorted = idx;
+        pending = new int[3 * 1024];
+        added = 0;
+    }
+
+    /**
+     * The (s, p, o) records in 'order' as (hi, lo) pairs, the first two ids in hi and the last one in lo : ids never
+     * being negative, pairs sort as the records do, with the TripleSorter sort.
+     */
+    private static long[] pack(int[] spo, int n, int[] order) {
+        long[] records = new long[2 * n];
+
+        for (int i = 0; i < n; i++) {
+            records[2 * i] = (long) spo[3 * i + order[0]] << 32 | spo[3 * i + order[1]];
+            records[2 * i + 1] = spo[3 * i + order[2]];
+        }
+
+        return records;
+    }
+
+    /**
+     * Off-heap when the records fit in one direct buffer, else on heap.
+     */
+    private static IntBuffer store(long[] records, int n) {
+        IntBuffer buf = 12L * n > Integer.MAX_VALUE ? IntBuffer.allocate(3 * n)
+                : ByteBuffer.allocateDirect(12 * n).asIntBuffer();
+
+        for (int i = 0; i < n; i++) {
+            buf.put((int) (records[2 * i] >>> 32));
+            buf.put((int) records[2 * i]);
+            buf.put((int) records[2 * i + 1]);
+        }
+
+        return buf.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Drops repeated records of a sorted array, in place.
+     *
+     * @return the number of distinct records.
+     */
+    private static int unique(long[] a, int n) {
+        int w = 0;
+
+        for (int i = 0; i < n; i++) {
+            if (w > 0 && a[2 * i] == a[2 * w - 2] && a[2 * i + 1] == a[2 * w - 1]) continue;
+
+            a[2 * w] = a[2 * i];
+            a[2 * w + 1] = a[2 * i + 1];
+            w++;
+        }
+
+        return w;
+    }
+
+    int terms() {
+        return terms.size();
+    }
+
+    /**
+     * The dictionary : per id a kind, a namespace / language / datatype id and the offset of its UTF-8 bytes, in an
+     * open addressing hash table of ids for the reverse lookup.
+     *
+     * Only adding takes the lock. Each add publishes a View of the arrays, and lookups and decoding read the last
+     * published one without locking : the arrays only grow by copy, or past the View's count, so what a View covers
+     * never changes under a reader.
+     */
+    private static class Terms {
+        private final Map<String, Integer> namespaceIds = new ConcurrentHashMap<>();
+        private final List<String> known = new ArrayList<>();
+
+        // written under the lock only.
+        private String[] namespaces = new String[64];
+        private int namespaceCount = 0;
+        private byte[] bytes = new byte[1 << 16];
+        private int used = 0;
+        private byte[] kinds = new byte[1024];
+        private int[] extras = new int[1024];
+        private int[] offsets = new int[1025];
+        private int count = 0;
+        private int[] table = new int[2048];
+
+        private volatile View view;
+
+        private final Cached[] cache = new Cached[CACHED_NODES];
+
+        Terms() {
+            // language / datatype 0 : a plain string literal.
+            namespace("");
+            known.addAll(RdfSnapshot.PREFIXES.values());
+            known.sort(Comparator.comparing(String::length).reversed());
+            known.forEach(this::namespace);
+            publish();
+        }
+
+        int size() {
+            return view.count;
+        }
+
+        private int namespace(String ns) {
+            Integer id = namespaceIds.get(ns);
+
+            if (id == null) {
+                if (namespaceCount == namespaces.length) namespaces = Arrays.copyOf(namespaces, 2 * namespaceCount);
+
+                id = namespaceCount;
+                namespaces[namespaceCount++] = ns;
+                namespaceIds.put(ns, id);
+            }
+
+            return id;
+        }
+
+        private void publish() {
+            view = new View(namespaces, bytes, kinds, extras, offsets, count, table);
+        }
+
+        /**
+         * The id of 'n', added first when it isn't known yet.
+         */
+        synchronized int add(Node n) {
+            Key k = new Key(n);
+            int extra = namespace(k.namespace);
+            int h = hash(k.local, extra, k.kind);
+            int mask = table.length - 1;
+
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                int id = table[i] - 1;
+
+                if (id < 0) {
+                    id = insert(k.kind, extra, k.local, h);
+                    publish();
+
+                    return id;
+                }
+
+                if (kinds[id] == k.kind && extras[id] == extra && equals(bytes, offsets, id, k.local)) return id;
+            }
+        }
+
+        /**
+         * The id of 'n', -1 when it isn't known.
+         */
+        int find(Node n) {
+            View v = view;
+            Key k = new Key(n);
+            Integer extra = namespaceIds.get(k.namespace);
+
+            if (extra == null) return -1;
+
+            int h = hash(k.local, extra, k.kind);
+            int mask = v.table.length - 1;
+
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                int id = v.table[i] - 1;
+
+                if (id < 0) return -1;
+
+                // ids past the view are being added, not known yet.
+                if (id < v.count && v.kinds[id] == k.kind && v.extras[id] == extra && equals(v.bytes, v.offsets, id, k.local))
+                    return id;
+            }
+        }
+
+        private static int hash(byte[] local, int extra, byte kind) {
+            return (MeSHDictionary.hash(local, 0, local.length) * 31 + extra) * 31 + kind;
+        }
+
+        private static boolean equals(byte[] bytes, int[] offsets, int id, byte[] b) {
+            int off = offsets[id];
+
+            return offsets[id + 1] - off == b.length && Arrays.equals(bytes, off, off + b.length, b, 0, b.length);
+        }
+
+        private int insert(byte kind, int extra, byte[] b, int h) {
+            if (count == kinds.length) {
+                kinds = Arrays.copyOf(kinds, 2 * count);
+                extras = Arrays.copyOf(extras, 2 * count);
+                offsets = Arrays.copyOf(offsets, 2 * count + 1);
+            }
+
+            if (used + b.length > bytes.length) {
+                long grown = Math.max(2L * bytes.length, (long) used + b.length);
+                if (grown > Integer.MAX_VALUE - 8) throw new RuntimeException("Sorry, the terms of a CompactGraph exceed 2GB");
+
+                bytes = Arrays.copyOf(bytes, (int) grown);
+            }
+
+            int id = count++;
+            System.arraycopy(b, 0, bytes, used, b.length);
+            kinds[id] = kind;
+            extras[id] = extra;
+            offsets[id] = used;
+            used += b.length;
+            offsets[id + 1] = used;
+
+            // half full at most, so probes stay short; a new table, as readers may be probing the current one.
+            if (2 * count > table.length) rehash();
+            else place(table, id, h);
+
+            return id;
+        }
+
+        private static void place(int[] table, int id, int h) {
+            int mask = table.length - 1, i = h & mask;
+
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = id + 1;
+        }
+
+        private void rehash() {
+            int[] grown = new int[2 * table.length];
+
+            for (int id = 0; id < count; id++) {
+                int off = offsets[id];
+                int h = (MeSHDictionary.hash(bytes, off, offsets[id + 1]) * 31 + extras[id]) * 31 + kinds[id];
+                place(grown, id, h);
+            }
+
+            table = grown;
+        }
+
+        /**
+         * The node of an id; recently decoded ones are kept, so e.g. predicates aren't decoded for every triple.
+         */
+        Node node(int id) {
+            int slot = id & (CACHED_NODES - 1);
+            Cached cached = cache[slot];
+
+            if (cached != null && cached.id == id) return cached.node;
+
+            Node n = decode(view, id);
+            cache[slot] = new Cached(id, n);
+
+            return n;
+        }
+
+        private static Node decode(View v, int id) {
+            String local = new String(v.bytes, v.offsets[id], v.offsets[id + 1] - v.offsets[id], StandardCharsets.UTF_8);
+            String extra = v.namespaces[v.extras[id]];
+
+            switch (v.kinds[id]) {
+                case IRI:
+                    return NodeFactory.createURI(extra + local);
+                case BLANK:
+                    return NodeFactory.createBlankNode(local);
+                default:
+                    if (extra.isEmpty()) return NodeFactory.createLiteral(local);
+                    if (extra.startsWith("@")) return NodeFactory.createLiteral(local, extra.substring(1));
+
+                    return NodeFactory.createLiteral(local, TypeMapper.getInstance().getSafeTypeByName(extra));
+            }
+        }
+
+        /**
+         * A term as stored : kind, namespace (or '@' language, or datatype) and local part.
+         */
+        private class Key {
+            final byte kind;
+            final String namespace;
+            final byte[] local;
+
+            Key(Node n) {
+                String local;
+
+                if (n.isURI()) {
+                    String uri = n.getURI(), ns = null;
+
+                    for (String k : known)
+                        if (uri.startsWith(k)) {
+                            ns = k;
+                            break;
+                        }
+
+                    if (ns == null) ns = uri.substring(0, Math.max(uri.lastIndexOf('/'), uri.lastIndexOf('#')) + 1);
+
+                    kind = IRI;
+                    namespace = ns;
+                    local = uri.substring(ns.length());
+                } else if (n.isLiteral()) {
+                    String lang = n.getLiteralLanguage(), dt = n.getLiteralDatatypeURI();
+
+                    kind = LITERAL;
+                    namespace = !lang.isEmpty() ? "@" + lang : XSDDatatype.XSDstring.getURI().equals(dt) ? "" : dt;
+                    local = n.getLiteralLexicalForm();
+                } else if (n.isBlank()) {
+                    kind = BLANK;
+                    namespace = "";
+                    local = n.getBlankNodeLabel();
+                } else {
+                    throw new UnsupportedOperationException("Sorry, a CompactGraph only holds IRIs, literals and blank nodes : " + n);
+                }
+
+                this.local = local.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * The dictionary's arrays as of an add.
+     */
+    private static class View {
+        final String[] namespaces;
+        final byte[] bytes;
+        final byte[] kinds;
+        final int[] extras;
+        final int[] offsets;
+        final int count;
+        final int[] table;
+
+        View(String[] namespaces, byte[] bytes, byte[] kinds, int[] extras, int[] offsets, int count, int[] table) {
+            this.namespaces = namespaces;
+            this.bytes = bytes;
+            this.kinds = kinds;
+            this.extras = extras;
+            this.offsets = offsets;
+            this.count = count;
+            this.table = table;
+        }
+    }
+
+    // immutable, so a slot is read whole even when written by another thread.
+    private static class Cached {
+        final int id;
+        final Node node;
+
+        Cached(int id, Node node) {
+            this.id = id;
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * JDBC connections to the AACT database shared by all BUILD stages, instead of one DriverManager connection per
+ * query or per trial.
+ */
+class ConnectionPool implements Closeable {
+    private final DataSource dataSource;
+
+    ConnectionPool(Properties prop, int size) {
+        HikariConfig config = new HikariConfig();
+
+        config.setJdbcUrl(prop.getProperty("aact_url"));
+        config.setUsername(prop.getProperty("user"));
+        config.setPassword(prop.getProperty("password"));
+        config.setMaximumPoolSize(Integer.parseInt(prop.getProperty("pool_size", String.valueOf(size))));
+        config.setPoolName("aact");
+        // lets the driver send a JDBC batch of upserts as multi-row statements.
+        config.addDataSourceProperty("reWriteBatchedInserts", "true");
+
+        dataSource = new HikariDataSource(config);
+    }
+
+    /**
+     * Over any data source, e.g. an embedded or stubbed database for benchmarks.
+     */
+    ConnectionPool(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public void close() {
+        if (dataSource instanceof HikariDataSource) ((HikariDataSource) dataSource).close();
+    }
+}
@@ -7,4 +7,18 @@ public class Constants {
     static final String TAB = "\\t";
     static final String OPEN_KG_CT_NS_TYPE = "https://vaidhyamegha.com/open_kg/ct";
     static final String NAMED_EDGE = "https://vaidhyamegha.com/named_edge/";
+    static final int OUTPUT_BUFFER_BYTES = 1 << 20;
+    static final String DEFAULT_BATCH_SIZE = "1000";
+    static final String DEFAULT_SORT_MEMORY_MB = "512";
+    static final String DEFAULT_FETCH_SIZE = "10000";
+    static final String DEFAULT_SPARQL_PORT = "8081";
+    static final String DEFAULT_SPARQL_ADMISSION_WAIT_MS = "1000";
+    static final String DEFAULT_SPARQL_TIMEOUT_MS = "60000";
+    static final String DEFAULT_QUERY_CACHE_MB = "256";
+    static final String DEFAULT_SPARQL_RELOAD_CHECK_MS = "10000";
+    static final String DEFAULT_SHARD_MAX_TRIPLES = "0";
+    static final String DEFAULT_SHARD_MAX_MB = "0";
+    static final String DEFAULT_MESH_SUBSET_CLOSURE = "http://id.nlm.nih.gov/mesh/vocab#treeNumber,"
+            + "http://id.nlm.nih.gov/mesh/vocab#parentTreeNumber,http://id.nlm.nih.gov/mesh/vocab#preferredConcept,"
+            + "http://id.nlm.nih.gov/mesh/vocab#preferredTerm";
 }
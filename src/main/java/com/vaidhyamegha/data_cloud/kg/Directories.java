@@ -0,0 +1,52 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Directories written aside then swapped in, as the TDB2 dataset and the output shards are.
+ */
+class Directories {
+
+    private Directories() { }
+
+    /**
+     * Puts 'next' in place of 'dir' : 'dir' is first renamed to 'dir.old', which is deleted once 'next' is in place.
+     * So 'dir' is either the previous or the new directory, and a crash in between leaves the previous one as
+     * 'dir.old', moved back by the next swap.
+     */
+    static void swap(Path next, Path dir) throws IOException {
+        Path old = dir.resolveSibling(dir.getFileName() + ".old");
+
+        if (Files.exists(old)) {
+            if (Files.exists(dir)) deleteRecursively(old);
+            else move(old, dir);
+        }
+
+        if (Files.exists(dir)) move(dir, old);
+        move(next, dir);
+
+        deleteRecursively(old);
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to);
+        }
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+}
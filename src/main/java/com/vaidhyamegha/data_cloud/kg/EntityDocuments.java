@@ -0,0 +1,471 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.*;
+
+/**
+ * One compact JSON-LD document per trial, PubMed article, MeSH descriptor and gene : the entity's statements, and
+ * the links pointing at it under "@reverse", so "everything about NCT..." is a single read instead of a graph
+ * traversal. Documents share one context, served at {@link #CONTEXT_PATH}, which maps the named edges to short
+ * terms and the usual namespaces to prefixes.
+ *
+ * Documents are appended, one per line, to '<path>' (also a JSON Lines file), never straddling a 1 GB boundary so
+ * each one is a slice of one mapped segment. '<path>.idx' maps "kind/id" keys to their document, laid out as
+ * MeSHDictionary does (big endian) : header | hash table of int record offsets (0 = empty), probed linearly |
+ * records of [key as int length and UTF-8 bytes][long document offset][int document length].
+ *
+ * Each build draws a random stamp, written in the index header, with the documents' size, and as the documents'
+ * first line. Both files are written aside and moved in place documents first, and opening a pair whose stamps or
+ * size differ fails, rather than serve slices of another build's documents.
+ *
+ * Building groups the triples by entity with an external sort, so it runs in 'sortMemoryBytes' whatever the graph size.
+ */
+class EntityDocuments implements Closeable {
+    static final String CONTEXT_PATH = "/entities/context.jsonld";
+
+    private static final int MAGIC = 0x4b47454e; // KGEN
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 32;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_BYTES = 1L << SEGMENT_BITS;
+
+    private final MappedByteBuffer index;
+    private final ByteBuffer[] segments;
+    private final int entries;
+    private final int slots;
+
+    private EntityDocuments(MappedByteBuffer index, ByteBuffer[] segments, long size) {
+        this.index = index;
+        this.segments = segments;
+
+        if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION)
+            throw new RuntimeException("Sorry, not an entity documents index, rebuild it");
+
+        if (index.getLong(16) != size || !stamped(segments, index.getLong(24)))
+            throw new RuntimeException("Sorry, the entity documents and their index are from different builds, rebuild them");
+
+        this.entries = index.getInt(8);
+        this.slots = index.getInt(12);
+    }
+
+    static Path indexOf(Path documents) {
+        return documents.resolveSibling(documents.getFileName() + ".idx");
+    }
+
+    static boolean exists(Path documents) {
+        return Files.exists(documents) && Files.exists(indexOf(documents));
+    }
+
+    static EntityDocuments open(Path documents) throws IOException {
+        MappedByteBuffer index;
+        ByteBuffer[] segments;
+        long size;
+
+        try (FileChannel ch = FileChannel.open(indexOf(documents), StandardOpenOption.READ)) {
+            index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+
+        try (FileChannel ch = FileChannel.open(documents, StandardOpenOption.READ)) {
+            size = ch.size();
+            segments = new ByteBuffer[(int) ((size + SEGMENT_BYTES - 1) >>> SEGMENT_BITS)];
+
+            for (int i = 0; i < segments.length; i++) {
+                long from = (long) i << SEGMENT_BITS;
+                segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, from, Math.min(SEGMENT_BYTES, size - from));
+            }
+        }
+
+        return new EntityDocuments(index, segments, size);
+    }
+
+    private static byte[] stampLine(long stamp) {
+        return ("{\"@context\":\"" + CONTEXT_PATH + "\",\"build\":\"" + Long.toHexString(stamp) + "\"}\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean stamped(ByteBuffer[] segments, long stamp) {
+        byte[] line = stampLine(stamp);
+
+        if (segments.length == 0 || segments[0].capacity() < line.length) return false;
+
+        for (int i = 0; i < line.length; i++)
+            if (segments[0].get(i) != line[i]) return false;
+
+        return true;
+    }
+
+    int size() {
+        return entries;
+    }
+
+    static String key(AdjacencyIndex.Kind kind, String id) {
+        return kind.name().toLowerCase(Locale.ROOT) + "/" + id;
+    }
+
+    /**
+     * The document of 'key', a read only view of the mapped file (no copy), null when there is none.
+     */
+    ByteBuffer get(String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int mask = slots - 1;
+
+        for (int i = MeSHDictionary.hash(k, 0, k.length) & mask; ; i = (i + 1) & mask) {
+            int record = index.getInt(HEADER_BYTES + 4 * i);
+
+            if (record == 0) return null;
+            if (keyEquals(record, k)) {
+                int at = record + 4 + k.length;
+                long offset = index.getLong(at);
+                int length = index.getInt(at + 8);
+
+                return segments[(int) (offset >>> SEGMENT_BITS)].slice((int) (offset & (SEGMENT_BYTES - 1)), length)
+                        .asReadOnlyBuffer();
+            }
+        }
+    }
+
+    // absolute reads only, so the mapped index can be shared across threads
+    private boolean keyEquals(int offset, byte[] key) {
+        if (index.getInt(offset) != key.length) return false;
+
+        for (int i = 0, p = offset + 4; i < key.length; i++, p++)
+            if (index.get(p) != key[i]) return false;
+
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // mapped buffers are released by the GC, nothing to close explicitly.
+    }
+
+    /**
+     * The JSON-LD context every document refers to.
+     */
+    static ObjectNode context() {
+        ObjectNode context = JsonNodeFactory.instance.objectNode();
+        ObjectNode terms = context.putObject("@context");
+
+        terms.put("@vocab", NAMED_EDGE);
+        RdfSnapshot.PREFIXES.forEach(terms::put);
+        terms.put("label", RDF_SCHEMA_LABEL);
+
+        for (AdjacencyIndex.Relation r : AdjacencyIndex.Relation.values())
+            terms.putObject(r.label).put("@type", "@id");
+
+        return context;
+    }
+
+    /**
+     * Writes the documents of the entities in 'nTriples' (gzipped ones too, e.g. shards) to 'documents' and its index.
+     */
+    static int build(Path documents, long sortMemoryBytes, Path... nTriples) throws IOException {
+        Path dir = documents.toAbsolutePath().getParent();
+        Path statements = Files.createTempFile(dir, "entities", ".tsv");
+        Path sorted = Files.createTempFile(dir, "entities", ".sorted");
+
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(statements, StandardCharsets.UTF_8)) {
+                Statements s = new Statements(w);
+
+                for (Path nt : nTriples)
+                    RDFParser.source(nt).lang(Lang.NT).parse(new StreamRDFBase() {
+                        @Override
+                        public void triple(Triple t) {
+                            s.add(t);
+                        }
+                    });
+            }
+
+            new LineSorter(sortMemoryBytes).sortUnique(statements, sorted);
+            Files.delete(statements);
+
+            return write(sorted, documents);
+        } finally {
+            Files.deleteIfExists(statements);
+            Files.deleteIfExists(sorted);
+        }
+    }
+
+    /**
+     * Turns triples into 'key \t subject \t direction \t term \t value' lines, the value being already JSON-LD. A
+     * triple gives a forward line for its subject's entity, and a reverse one for its object's entity.
+     */
+    private static class Statements {
+        private final BufferedWriter w;
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final Set<String> idTerms = new HashSet<>();
+
+        Statements(BufferedWriter w) {
+            this.w = w;
+            for (AdjacencyIndex.Relation r : AdjacencyIndex.Relation.values()) idTerms.add(r.label);
+        }
+
+        void add(Triple t) {
+            Node s = t.getSubject(), p = t.getPredicate(), o = t.getObject();
+
+            if (!s.isURI() || !p.isURI()) return;
+
+            String term = term(p.getURI());
+
+            try {
+                String key = keyOf(s.getURI());
+                if (key != null) line(key, s.getURI(), "0", term, value(term, o));
+
+                key = o.isURI() ? keyOf(o.getURI()) : null;
+                if (key != null && !"@type".equals(term)) line(key, o.getURI(), "1", term, value(term, s));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void line(String key, String subject, String direction, String term, String value) throws IOException {
+            w.write(key);
+            w.write('\t');
+            w.write(compact(subject));
+            w.write('\t');
+            w.write(direction);
+            w.write('\t');
+            w.write(term);
+            w.write('\t');
+            w.write(value);
+            w.write('\n');
+        }
+
+        private static String keyOf(String uri) {
+            for (AdjacencyIndex.Kind k : AdjacencyIndex.Kind.values()) {
+                String id = k.idOf(uri);
+                if (id != null && !id.isEmpty()) return key(k, id);
+            }
+
+            return null;
+        }
+
+        private static String term(String predicate) {
+            if (predicate.equals(RDF_SYNTAX_NS_TYPE)) return "@type";
+            if (predicate.equals(RDF_SCHEMA_LABEL)) return "label";
+            if (predicate.startsWith(NAMED_EDGE)) return predicate.substring(NAMED_EDGE.length());
+
+            return compact(predicate);
+        }
+
+        private String value(String term, Node n) throws IOException {
+            if (n.isURI()) {
+                String id = compact(n.getURI());
+
+                return mapper.writeValueAsString(idTerms.contains(term) || "@type".equals(term) ? id : Map.of("@id", id));
+            }
+
+            if (n.isBlank()) return mapper.writeValueAsString(Map.of("@id", "_:" + n.getBlankNodeLabel()));
+
+            Map<String, String> v = new LinkedHashMap<>();
+            v.put("@value", n.getLiteralLexicalForm());
+
+            if (!n.getLiteralLanguage().isEmpty()) v.put("@language", n.getLiteralLanguage());
+            else if (!XSDDatatype.XSDstring.getURI().equals(n.getLiteralDatatypeURI())) v.put("@type", n.getLiteralDatatypeURI());
+            else return mapper.writeValueAsString(n.getLiteralLexicalForm());
+
+            return mapper.writeValueAsString(v);
+        }
+    }
+
+    /**
+     * 'prefix:local' for IRIs under one of the context's prefixes.
+     */
+    static String compact(String uri) {
+        for (Map.Entry<String, String> e : RdfSnapshot.PREFIXES.entrySet())
+            if (uri.startsWith(e.getValue()) && uri.length() > e.getValue().length())
+                return e.getKey() + ":" + uri.substring(e.getValue().length());
+
+        return uri;
+    }
+
+    /**
+     * Groups the sorted lines by key into documents, appended to 'documents', then writes the index.
+     */
+    private static int write(Path sorted, Path documents) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Path tmp = documents.resolveSibling(documents.getFileName() + ".tmp");
+        Path idx = indexOf(documents), idxTmp = idx.resolveSibling(idx.getFileName() + ".tmp");
+        Path entries = Files.createTempFile(documents.toAbsolutePath().getParent(), "entities", ".entries");
+        long stamp = new Random().nextLong(), size = 0;
+        int n = 0;
+
+        try {
+            try (BufferedReader br = Files.newBufferedReader(sorted, StandardCharsets.UTF_8);
+                 OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp), OUTPUT_BUFFER_BYTES);
+                 DataOutputStream index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(entries), OUTPUT_BUFFER_BYTES))) {
+                Document doc = null;
+                byte[] stampLine = stampLine(stamp);
+                long offset = stampLine.length;
+
+                os.write(stampLine);
+
+                for (String line = br.readLine(); ; line = br.readLine()) {
+                    String[] f = line == null ? null : line.split("\t", 5);
+
+                    if (doc != null && (f == null || !f[0].equals(doc.key))) {
+                        byte[] json = mapper.writeValueAsBytes(doc.json());
+
+                        if (json.length >= SEGMENT_BYTES)
+                            throw new RuntimeException("Sorry, the document of " + doc.key + " exceeds 1GB");
+
+                        // pad with blank lines rather than straddle two mapped segments.
+                        long room = SEGMENT_BYTES - (offset & (SEGMENT_BYTES - 1));
+                        if (json.length + 1 > room) {
+                            for (long i = 0; i < room; i++) os.write('\n');
+                            offset += room;
+                        }
+
+                        os.write(json);
+                        os.write('\n');
+
+                        byte[] key = doc.key.getBytes(StandardCharsets.UTF_8);
+                        index.writeInt(key.length);
+                        index.write(key);
+                        index.writeLong(offset);
+                        index.writeInt(json.length);
+
+                        offset += json.length + 1;
+                        n++;
+                        doc = null;
+                    }
+
+                    if (f == null) break;
+                    if (f.length < 5) continue;
+
+                    if (doc == null) doc = new Document(f[0]);
+                    doc.add(f[1], "1".equals(f[2]), f[3], mapper.readTree(f[4]));
+                }
+
+                size = offset;
+            }
+
+            writeIndex(entries, n, size, stamp, idxTmp);
+            Files.move(tmp, documents, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(idxTmp, idx, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+            Files.deleteIfExists(idxTmp);
+            Files.deleteIfExists(entries);
+        }
+
+        return n;
+    }
+
+    /**
+     * The nodes (IRIs) of one entity, e.g. a MeSH descriptor and the MRCOC DUI record sharing its id.
+     */
+    private static class Document {
+        private final String key;
+        private final Map<String, ObjectNode> nodes = new LinkedHashMap<>();
+
+        Document(String key) {
+            this.key = key;
+        }
+
+        void add(String subject, boolean reverse, String term, JsonNode value) {
+            ObjectNode node = nodes.computeIfAbsent(subject, s -> {
+                ObjectNode o = JsonNodeFactory.instance.objectNode();
+                o.put("@id", s);
+                return o;
+            });
+
+            ObjectNode properties = node;
+
+            if (reverse) {
+                properties = (ObjectNode) node.get("@reverse");
+                if (properties == null) properties = node.putObject("@reverse");
+            }
+
+            JsonNode existing = properties.get(term);
+
+            if (existing == null) properties.set(term, value);
+            else if (existing.isArray()) ((ArrayNode) existing).add(value);
+            else properties.putArray(term).add(existing).add(value);
+        }
+
+        JsonNode json() {
+            ObjectNode doc = JsonNodeFactory.instance.objectNode();
+            doc.put("@context", CONTEXT_PATH);
+
+            if (nodes.size() == 1) {
+                doc.setAll(nodes.values().iterator().next());
+            } else {
+                ArrayNode graph = doc.putArray("@graph");
+                nodes.values().forEach(graph::add);
+            }
+
+            return doc;
+        }
+    }
+
+    private static int slotsFor(int n) {
+        return Integer.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+    }
+
+    /**
+     * Hash table over the records of 'entries' : record offsets are known from the key lengths alone, so the table is
+     * filled in one pass and written ahead of the records, copied as they are.
+     */
+    private static void writeIndex(Path entries, int n, long documentsBytes, long stamp, Path out) throws IOException {
+        int slots = slotsFor(n);
+        int[] table = new int[slots];
+        long recordsStart = HEADER_BYTES + 4L * slots;
+
+        if (recordsStart + Files.size(entries) > Integer.MAX_VALUE)
+            throw new RuntimeException("Sorry, the entity index exceeds 2GB and can't be memory-mapped");
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entries), OUTPUT_BUFFER_BYTES))) {
+            long offset = recordsStart;
+
+            for (int e = 0; e < n; e++) {
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                in.readLong();
+                in.readInt();
+
+                int mask = slots - 1, i = MeSHDictionary.hash(key, 0, key.length) & mask;
+                while (table[i] != 0) i = (i + 1) & mask;
+                table[i] = (int) offset;
+
+                offset += 4 + key.length + 12;
+            }
+        }
+
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out), OUTPUT_BUFFER_BYTES))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(n);
+            os.writeInt(slots);
+            os.writeLong(documentsBytes);
+            os.writeLong(stamp);
+
+            for (int o : table) os.writeInt(o);
+
+            Files.copy(entries, os);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trial ids already sent to Entrez along with the PubMed ids found, kept in an append-only tab separated file
+ * (trial id, comma separated PubMed ids) so a later BUILD doesn't ask for them again.
+ */
+class EntrezCache implements Closeable {
+    private final Map<String, List<Integer>> results = new ConcurrentHashMap<>();
+    private final BufferedWriter log;
+
+    private EntrezCache(Path file) throws IOException {
+        if (Files.exists(file)) {
+            try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+
+                while ((line = br.readLine()) != null) read(line);
+            }
+        }
+
+        log = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    static EntrezCache open(Path file) throws IOException {
+        return new EntrezCache(file);
+    }
+
+    private void read(String line) {
+        int tab = line.indexOf('\t');
+
+        // a line cut short by an interrupted run is simply attempted again.
+        if (tab <= 0) return;
+
+        List<Integer> ids = new ArrayList<>();
+
+        try {
+            for (String id : line.substring(tab + 1).split(","))
+                if (!id.isEmpty()) ids.add(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        results.put(line.substring(0, tab), ids);
+    }
+
+    boolean attempted(String trialId) {
+        return results.containsKey(trialId);
+    }
+
+    List<Integer> get(String trialId) {
+        return results.get(trialId);
+    }
+
+    int size() {
+        return results.size();
+    }
+
+    synchronized void put(String trialId, List<Integer> ids) {
+        results.put(trialId, ids);
+
+        try {
+            log.write(trialId);
+            log.write('\t');
+            for (int i = 0; i < ids.size(); i++) {
+                if (i > 0) log.write(',');
+                log.write(String.valueOf(ids.get(i)));
+            }
+            log.write('\n');
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Sorry, couldn't write to Entrez cache");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+}
@@ -6,15 +6,43 @@ import org.springframework.http.codec.xml.Jaxb2XmlDecoder;
 import org.springframework.http.codec.xml.Jaxb2XmlEncoder;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Many implementations for Entrez clients are available in the open. Below reference allowed a succinct implementation .
  * Reference : https://stackoverflow.com/questions/68209076/spring-resttemplate-works-for-string-but-not-for-my-class
  * More references are in docs/open_knowledge_graph_on_clinical_trials/README.md.
+ *
+ * One client (and its WebClient, codecs and connection pool) is reused for all requests. Requests are non-blocking,
+ * run at most 'concurrency' at a time and are paced by a token bucket to stay within NCBI's requests per second
+ * policy (3 per second, 10 with an API key).
  */
 public class EntrezClient {
-    public static ESearchResult getPubMedIds(String trialId) {
-        WebClient wb = WebClient.builder()
+    static final String DEFAULT_BASE_URL = "https://eutils.ncbi.nlm.nih.gov/entrez/eutils/";
+    private static final int MAX_RETRIES = 3;
+
+    private static EntrezClient shared = null;
+
+    private final WebClient wb;
+    private final String baseUrl;
+    private final String apiKey;
+    private final RateLimiter limiter;
+    private final int concurrency;
+
+    public EntrezClient(String baseUrl, String apiKey, double requestsPerSecond, int concurrency) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.apiKey = apiKey;
+        this.limiter = new RateLimiter(requestsPerSecond, 1);
+        this.concurrency = Math.max(1, concurrency);
+        this.wb = WebClient.builder()
                 .defaultHeaders(header -> {
                     header.setContentType(MediaType.APPLICATION_XML);
                 })
@@ -26,12 +54,84 @@ public class EntrezClient {
                                 })
                                 .build()
                 ).build();
+    }
+
+    public static synchronized EntrezClient getShared() {
+        if (shared == null) shared = new EntrezClient(DEFAULT_BASE_URL, null, 3, 3);
+
+        return shared;
+    }
+
+    public static ESearchResult getPubMedIds(String trialId) {
+        return getShared().search(trialId).block();
+    }
+
+    /**
+     * esearch for articles with the trial id as secondary source id. Retried with back off on 429 and 5xx.
+     */
+    public Mono<ESearchResult> search(String trialId) {
+        String uri = baseUrl + "esearch.fcgi?db=pubmed&term=" + trialId + "[si]&retmin=0&retmax=100&usehistory=y"
+                + (apiKey == null || apiKey.isEmpty() ? "" : "&api_key=" + apiKey);
+
+        // deferred, so every retry waits for a fresh token too.
+        return Mono.defer(() -> Mono.delay(limiter.reserve())
+                        .then(Mono.defer(() -> request(trialId, uri))))
+                .retryWhen(Retry.backoff(MAX_RETRIES, Duration.ofSeconds(1)).filter(EntrezClient::isRetryable));
+    }
+
+    /**
+     * One attempt, its latency (once paced, up to the body being decoded) and HTTP status recorded in the metrics
+     * registry and as a JFR event. Status 0 : no response, e.g. a connection failure.
+     */
+    private Mono<ESearchResult> request(String trialId, String uri) {
+        BuildEvents.EntrezRequest event = new BuildEvents.EntrezRequest();
+        long start = System.nanoTime();
+        int[] status = {0};
+
+        event.begin();
 
         return wb.get()
-                .uri("https://eutils.ncbi.nlm.nih.gov/entrez/eutils/esearch.fcgi?db=pubmed&term="
-                        + trialId + "[si]&retmin=0&retmax=100&usehistory=y")
-                .retrieve()
-                .bodyToMono(ESearchResult.class)
-                .block();
+                .uri(uri)
+                .exchangeToMono(r -> {
+                    status[0] = r.rawStatusCode();
+
+                    return r.statusCode().isError() ? r.createException().flatMap(Mono::error)
+                            : r.bodyToMono(ESearchResult.class);
+                })
+                .doFinally(signal -> {
+                    Metrics.REGISTRY.record("entrez.latency_ms", (System.nanoTime() - start) / 1_000_000);
+                    Metrics.REGISTRY.count("entrez.status." + status[0], 1);
+
+                    event.trialId = trialId;
+                    event.status = status[0];
+                    event.commit();
+                });
+    }
+
+    /**
+     * Searches all trial ids, 'concurrency' at a time. A trial id that still fails after retries is reported and
+     * left out, so it is attempted again on the next run.
+     */
+    public Flux<Map.Entry<String, ESearchResult>> searchAll(Iterable<String> trialIds) {
+        return Flux.fromIterable(trialIds)
+                .flatMap(id -> search(id)
+                        .map(r -> Map.entry(id, r))
+                        .onErrorResume(e -> {
+                            Metrics.REGISTRY.count("entrez.failed", 1);
+                            System.err.println("Entrez search failed for " + id + " : " + e.getMessage());
+                            return Mono.empty();
+                        }), concurrency);
+    }
+
+    static List<Integer> idsOf(ESearchResult r) {
+        return r == null || r.getIdList() == null ? Collections.emptyList() : r.getIdList();
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        if (!(e instanceof WebClientResponseException)) return false;
+
+        int status = ((WebClientResponseException) e).getRawStatusCode();
+
+        return status == 429 || status >= 500;
     }
 }
@@ -0,0 +1,78 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HyperGraphQL config whose services can be re-pointed before the server starts, e.g. at the SPARQL endpoint serving
+ * the datasets server mode loaded. A modified copy is written next to the original, so relative schema paths
+ * still resolve.
+ */
+class HqlConfig {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path path;
+    private final JsonNode root;
+    private boolean changed = false;
+
+    private HqlConfig(Path path) throws IOException {
+        this.path = path;
+        this.root = mapper.readTree(path.toFile());
+    }
+
+    static HqlConfig read(String path) throws IOException {
+        return new HqlConfig(Path.of(path));
+    }
+
+    /**
+     * LocalModelSPARQLService entries loading an N-Triples file.
+     */
+    List<ObjectNode> nTriplesServices() {
+        List<ObjectNode> services = new ArrayList<>();
+
+        for (JsonNode service : root.path("services"))
+            if ("LocalModelSPARQLService".equals(service.path("type").asText())
+                    && "NTRIPLES".equalsIgnoreCase(service.path("filetype").asText())) services.add((ObjectNode) service);
+
+        return services;
+    }
+
+    static Path fileOf(ObjectNode service) {
+        return Path.of(service.path("filepath").asText());
+    }
+
+    static String idOf(ObjectNode service) {
+        return service.path("id").asText();
+    }
+
+    void toEndpoint(ObjectNode service, String url) {
+        service.remove("filepath");
+        service.remove("filetype");
+        service.put("type", "SPARQLEndpointService");
+        service.put("url", url);
+        service.put("graph", "");
+        service.put("user", "");
+        service.put("password", "");
+        changed = true;
+
+        System.out.println("Service " + service.path("id").asText() + " queries " + url);
+    }
+
+    /**
+     * @return path of the config to start the server with, the original one when nothing was re-pointed.
+     */
+    String write() throws IOException {
+        if (!changed) return path.toString();
+
+        String name = path.getFileName().toString().replaceAll("\\.json$", "");
+        Path generated = path.resolveSibling(name + "-generated.json");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(generated.toFile(), root);
+
+        return generated.toString();
+    }
+}
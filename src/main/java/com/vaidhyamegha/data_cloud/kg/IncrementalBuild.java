@@ -0,0 +1,314 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Checkpoint of a previous BUILD used to redo only what changed and to write an RDF Patch of the difference.
+ *
+ * The checkpoint directory keeps, per stage, a fingerprint of its sources (file digests, or a digest of the query's
+ * rows computed by PostgreSQL) and a sorted, de-duplicated N-Triples snapshot of what it emitted. Stages keyed by
+ * trial also keep one fingerprint per trial, so only the trials whose rows changed are queried and re-linked, and the
+ * co-occurrence stage keeps the PubMed ids it joined, so only articles newly linked to trials are joined with MRCOC.
+ */
+class IncrementalBuild {
+    private static final String FINGERPRINTS = "fingerprints.properties";
+    private static final String DIGESTS = "digests.properties";
+
+    private final Path dir;
+    private final BulkReader reader;
+    private final LineSorter sorter;
+    private final Properties previous = new Properties();
+    private final Map<String, String> current = new ConcurrentHashMap<>();
+    // file -> "<size>-<last modified> <digest>"
+    private final Properties previousDigests = new Properties();
+    private final Map<String, String> currentDigests = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> keyFingerprints = new ConcurrentHashMap<>();
+    private final Set<String> reused = ConcurrentHashMap.newKeySet();
+    // stage -> subjects whose old triples are replaced by the stage's new ones. Absent : the stage was fully rebuilt.
+    private final Map<String, Set<String>> replaced = new ConcurrentHashMap<>();
+    private final List<String> committed = new ArrayList<>();
+
+    IncrementalBuild(Path dir, BulkReader reader, long sortMemoryBytes) throws IOException {
+        this.dir = dir;
+        this.reader = reader;
+        this.sorter = new LineSorter(sortMemoryBytes);
+
+        Files.createDirectories(dir);
+
+        Path p = dir.resolve(FINGERPRINTS);
+        if (Files.exists(p)) try (Reader r = Files.newBufferedReader(p)) {
+            previous.load(r);
+        }
+
+        Path d = dir.resolve(DIGESTS);
+        if (Files.exists(d)) try (Reader r = Files.newBufferedReader(d)) {
+            previousDigests.load(r);
+        }
+    }
+
+    /**
+     * Records the stage's source fingerprint and tells if its previous snapshot can be reused as is.
+     */
+    boolean unchanged(String stage, String fingerprint) {
+        current.put(stage, fingerprint);
+
+        if (fingerprint.equals(previous.getProperty(stage)) && Files.exists(snapshot(stage))) {
+            reused.add(stage);
+            System.out.println("Stage " + stage + " : sources unchanged, reusing checkpoint");
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Trial ids whose rows in 'query' (keyed by 'nct_id') were added, changed or removed since the checkpoint,
+     * or null when the stage has to be built in full : no usable checkpoint, or 'dependsOn' (fingerprint of the
+     * other inputs, e.g. the MeSH dictionary) changed.
+     */
+    Set<String> changedTrials(String stage, String query, String dependsOn) {
+        Map<String, String> now = new HashMap<>();
+
+        try {
+            reader.scan(stage + " fingerprints", "select nct_id, md5(string_agg(q::text, '|' order by q::text)) as fp from ("
+                    + BulkReader.strip(query) + ") q group by nct_id", rs -> now.put(rs.getString("nct_id"), rs.getString("fp")));
+        } catch (SQLException e) {
+            System.err.format("SQL State: %s\n%s", e.getSQLState(), e.getMessage());
+            throw new RuntimeException("Sorry, unable to fingerprint " + stage);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return changedKeys(stage, now, dependsOn, RESOURCE.TRIAL::uri, "trials");
+    }
+
+    /**
+     * Keys of 'now' (key -> fingerprint of what the stage emits for it) that were added, changed or removed since
+     * the checkpoint, or null when the stage has to be built in full. The old triples of their subjects
+     * ('subjectOf' the key) are replaced by what the stage emits this run. 'what' the keys are, for the log.
+     */
+    Set<String> changedKeys(String stage, Map<String, String> now, String dependsOn, Function<String, String> subjectOf,
+                            String what) {
+        keyFingerprints.put(stage, now);
+        current.put(stage, dependsOn);
+
+        Map<String, String> before = readKeyFingerprints(stage);
+
+        if (before == null || !dependsOn.equals(previous.getProperty(stage)) || !Files.exists(snapshot(stage))) return null;
+
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> e : now.entrySet())
+            if (!e.getValue().equals(before.get(e.getKey()))) changed.add(e.getKey());
+        for (String key : before.keySet())
+            if (!now.containsKey(key)) changed.add(key);
+
+        Set<String> subjects = new HashSet<>();
+        for (String key : changed) subjects.add(subjectOf.apply(key));
+        replaced.put(stage, subjects);
+
+        System.out.println("Stage " + stage + " : " + changed.size() + " of " + now.size() + " " + what + " changed");
+
+        return changed;
+    }
+
+    /**
+     * Marks a stage whose output only ever adds to its previous snapshot (e.g. MeSH labels).
+     */
+    void accumulate(String stage) {
+        replaced.put(stage, Collections.emptySet());
+    }
+
+    /**
+     * SHA-256 of 'file', taken from the checkpoint while the file has the size and last modified time it had then :
+     * the MRCOC file runs to gigabytes, hashing it again on every run only to find it unchanged would take longer
+     * than the stages it lets us skip.
+     */
+    String fileDigest(Path file) {
+        String key = file.toAbsolutePath().normalize().toString();
+        String stamp;
+
+        try {
+            stamp = Files.size(file) + "-" + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Sorry, couldn't read the attributes of " + file);
+        }
+
+        String[] known = previousDigests.getProperty(key, "").split(" ");
+        String digest = known.length == 2 && known[0].equals(stamp) ? known[1] : digest(file);
+
+        currentDigests.put(key, stamp + " " + digest);
+
+        return digest;
+    }
+
+    private static String digest(Path file) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 20)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[1 << 16];
+            int n;
+
+            while ((n = in.read(buf)) > 0) md.update(buf, 0, n);
+
+            return HexFormat.of().formatHex(md.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Sorry, couldn't digest " + file);
+        }
+    }
+
+    /**
+     * Turns what the stage emitted this run into its new sorted snapshot : reused as is, replaced in full, or the old
+     * snapshot minus the replaced subjects merged with the new triples.
+     */
+    void commitStage(String stage, Path emitted) throws IOException {
+        Path next = dir.resolve(stage + ".nt.next");
+        committed.add(stage);
+
+        if (reused.contains(stage)) {
+            Files.copy(snapshot(stage), next, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+
+        Set<String> subjects = replaced.get(stage);
+        Path sorted = dir.resolve(stage + ".nt.sorted");
+        sorter.sortUnique(emitted, sorted);
+
+        if (subjects == null) {
+            Files.move(sorted, next, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Path kept = dir.resolve(stage + ".nt.kept");
+            // kept lines of a sorted file stay sorted
+            LineSorter.mergeUnique(List.of(snapshot(stage)), line -> !subjects.contains(subjectOf(line)), kept);
+            LineSorter.mergeUnique(List.of(kept, sorted), line -> true, next);
+            Files.delete(kept);
+            Files.delete(sorted);
+        }
+    }
+
+    /**
+     * Writes the full snapshot to 'output' and the RDF Patch (https://afs.github.io/rdf-patch/) from the previous
+     * snapshot to 'patch', then makes this run the new checkpoint.
+     */
+    void finish(OutputStream output, Path patch) throws IOException {
+        long adds = 0, deletes = 0;
+
+        try (BufferedWriter pw = Files.newBufferedWriter(patch, StandardCharsets.UTF_8)) {
+            pw.write("TX .\n");
+
+            for (String stage : committed) {
+                long[] d = diff(snapshot(stage), dir.resolve(stage + ".nt.next"), pw);
+                adds += d[0];
+                deletes += d[1];
+
+                Files.copy(dir.resolve(stage + ".nt.next"), output);
+            }
+
+            pw.write("TC .\n");
+        }
+
+        for (String stage : committed)
+            Files.move(dir.resolve(stage + ".nt.next"), snapshot(stage), StandardCopyOption.REPLACE_EXISTING);
+
+        for (Map.Entry<String, Map<String, String>> e : keyFingerprints.entrySet())
+            writeKeyFingerprints(e.getKey(), e.getValue());
+
+        Properties d = new Properties();
+        d.putAll(currentDigests);
+        try (Writer w = Files.newBufferedWriter(dir.resolve(DIGESTS))) {
+            d.store(w, "size, last modified time and digest of the source files of the last BUILD");
+        }
+
+        // fingerprints last, a run interrupted before this point is redone against the old ones.
+        Properties p = new Properties();
+        p.putAll(current);
+        try (Writer w = Files.newBufferedWriter(dir.resolve(FINGERPRINTS))) {
+            p.store(w, "source fingerprints of the last BUILD");
+        }
+
+        System.out.println("Delta : " + adds + " added, " + deletes + " deleted, written to " + patch);
+    }
+
+    private static long[] diff(Path before, Path after, BufferedWriter patch) throws IOException {
+        long[] counts = new long[2];
+
+        try (BufferedReader a = Files.exists(before) ? Files.newBufferedReader(before, StandardCharsets.UTF_8)
+                : new BufferedReader(new StringReader(""));
+             BufferedReader b = Files.newBufferedReader(after, StandardCharsets.UTF_8)) {
+            String x = a.readLine(), y = b.readLine();
+
+            while (x != null || y != null) {
+                int cmp = x == null ? 1 : y == null ? -1 : x.compareTo(y);
+
+                if (cmp < 0) {
+                    patch.write("D " + x + "\n");
+                    counts[1]++;
+                    x = a.readLine();
+                } else if (cmp > 0) {
+                    patch.write("A " + y + "\n");
+                    counts[0]++;
+                    y = b.readLine();
+                } else {
+                    x = a.readLine();
+                    y = b.readLine();
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * The stage's sorted snapshot, after 'finish' the one of this run.
+     */
+    Path snapshotOf(String stage) {
+        return snapshot(stage);
+    }
+
+    private Path snapshot(String stage) {
+        return dir.resolve(stage + ".nt");
+    }
+
+    private Map<String, String> readKeyFingerprints(String stage) {
+        Path p = dir.resolve(stage + ".fp");
+
+        if (!Files.exists(p)) return null;
+
+        Map<String, String> fps = new HashMap<>();
+        try (BufferedReader br = Files.newBufferedReader(p, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = br.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) fps.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return fps;
+    }
+
+    private void writeKeyFingerprints(String stage, Map<String, String> fps) throws IOException {
+        try (BufferedWriter bw = Files.newBufferedWriter(dir.resolve(stage + ".fp"), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> e : fps.entrySet()) bw.write(e.getKey() + "\t" + e.getValue() + "\n");
+        }
+    }
+
+    static String subjectOf(String ntLine) {
+        int end = ntLine.indexOf('>');
+
+        return ntLine.startsWith("<") && end > 0 ? ntLine.substring(1, end) : "";
+    }
+}
@@ -0,0 +1,141 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * External sort of text lines (N-Triples) : sorted runs that fit 'memoryBytes' are spilled next to the output and
+ * merged, dropping duplicate lines. Sorted files can then be merged or diffed in one streaming pass.
+ */
+class LineSorter {
+    private final long memoryBytes;
+
+    LineSorter(long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+    }
+
+    void sortUnique(Path in, Path out) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        long bytes = 0;
+
+        try (BufferedReader br = Files.newBufferedReader(in, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) continue;
+
+                lines.add(line);
+                // rough heap cost of a String holding 'line'
+                bytes += 48 + 2L * line.length();
+
+                if (bytes >= memoryBytes) {
+                    runs.add(spill(lines, out));
+                    bytes = 0;
+                }
+            }
+        }
+
+        if (runs.isEmpty()) {
+            lines.sort(null);
+            write(lines, out);
+            return;
+        }
+
+        if (!lines.isEmpty()) runs.add(spill(lines, out));
+
+        try {
+            mergeUnique(runs, line -> true, out);
+        } finally {
+            for (Path run : runs) Files.deleteIfExists(run);
+        }
+    }
+
+    /**
+     * K-way merge of already sorted files, keeping lines accepted by 'keep' and dropping duplicates.
+     */
+    static void mergeUnique(List<Path> sorted, Predicate<String> keep, Path out) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>();
+        List<BufferedReader> readers = new ArrayList<>();
+
+        try (BufferedWriter bw = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            for (Path p : sorted) {
+                if (!Files.exists(p)) continue;
+
+                BufferedReader br = Files.newBufferedReader(p, StandardCharsets.UTF_8);
+                readers.add(br);
+
+                Cursor c = new Cursor(br);
+                if (c.advance()) queue.add(c);
+            }
+
+            String last = null;
+
+            while (!queue.isEmpty()) {
+                Cursor c = queue.poll();
+
+                if (!c.line.equals(last) && keep.test(c.line)) {
+                    bw.write(c.line);
+                    bw.write('\n');
+                    last = c.line;
+                }
+
+                if (c.advance()) queue.add(c);
+            }
+        } finally {
+            for (BufferedReader br : readers) br.close();
+        }
+    }
+
+    private Path spill(List<String> lines, Path out) throws IOException {
+        Path run = Files.createTempFile(out.toAbsolutePath().getParent(), "run", ".nt");
+
+        lines.sort(null);
+        write(lines, run);
+        lines.clear();
+
+        return run;
+    }
+
+    private static void write(List<String> sorted, Path out) throws IOException {
+        try (BufferedWriter bw = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            String last = null;
+
+            for (String line : sorted) {
+                if (line.equals(last)) continue;
+
+                bw.write(line);
+                bw.write('\n');
+                last = line;
+            }
+        }
+    }
+
+    private static class Cursor implements Comparable<Cursor> {
+        private final BufferedReader br;
+        private String line;
+
+        Cursor(BufferedReader br) {
+            this.br = br;
+        }
+
+        boolean advance() throws IOException {
+            do {
+                line = br.readLine();
+            } while (line != null && line.isEmpty());
+
+            return line != null;
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            return line.compareTo(o.line);
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package com.vaidhyamegha.data_cloud.kg;
 
-enum MODE {BUILD("build"), CLI("cli"), SERVER("server");
+enum MODE {BUILD("build"), CLI("cli"), SERVER("server"), BATCH("batch");
     String name = "";
 
     MODE(String m) {
-        if (m.equals("build") || m.equals("cli") || m.equals("server")  )
+        if (m.equals("build") || m.equals("cli") || m.equals("server") || m.equals("batch"))
             name = m;
         else throw new RuntimeException("Unsupported mode");
     }
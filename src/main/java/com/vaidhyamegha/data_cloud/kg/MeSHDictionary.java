@@ -0,0 +1,294 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Label to MeSH descriptor dictionary, built once per MeSH release from mesh2022.nt and memory-mapped afterwards.
+ * Replaces scanning a fully parsed MeSH Model for every AACT / PheGenI term.
+ *
+ * File layout (big endian) :
+ * header | exact label hash table | case folded label hash table | records | folded records
+ * Hash tables hold int offsets of records (0 = empty slot) and are probed linearly.
+ * A record is [label][subject][predicate], each as an int length followed by UTF-8 bytes.
+ * A folded record is [lower case label][int offset of record].
+ */
+public class MeSHDictionary implements Closeable {
+    private static final int MAGIC = 0x4D655348; // "MeSH"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    // a descriptor of any MeSH release, e.g. http://id.nlm.nih.gov/mesh/2022/D001249
+    private static final Pattern MESH_DESCRIPTOR = Pattern.compile("http://id\\.nlm\\.nih\\.gov/mesh/(\\d+/)?D\\d+");
+
+    private final MappedByteBuffer buffer;
+    private final int entries;
+    private final int exactSlots;
+    private final int foldedSlots;
+
+    public static class Entry {
+        public final String subject;
+        public final String predicate;
+        public final String label;
+
+        Entry(String subject, String predicate, String label) {
+            this.subject = subject;
+            this.predicate = predicate;
+            this.label = label;
+        }
+    }
+
+    private MeSHDictionary(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new RuntimeException("Sorry, not a MeSH dictionary file");
+
+        this.entries = buffer.getInt(8);
+        this.exactSlots = buffer.getInt(12);
+        this.foldedSlots = buffer.getInt(16);
+    }
+
+    public static MeSHDictionary open(Path dictionary) throws IOException {
+        try (FileChannel ch = FileChannel.open(dictionary, StandardOpenOption.READ)) {
+            return new MeSHDictionary(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /**
+     * Opens the dictionary, (re)building it first when it is missing or older than the MeSH RDF it was built from.
+     */
+    public static MeSHDictionary openOrBuild(Path dictionary, Path meshRDF, boolean caseFold) throws IOException {
+        if (!Files.exists(dictionary) || (Files.exists(meshRDF)
+                && Files.getLastModifiedTime(dictionary).compareTo(Files.getLastModifiedTime(meshRDF)) < 0)) {
+            System.out.println("Building MeSH dictionary " + dictionary + " from " + meshRDF);
+            build(meshRDF, dictionary, caseFold);
+        }
+
+        MeSHDictionary d = open(dictionary);
+
+        if (caseFold && !d.isCaseFolded()) {
+            System.out.println("Rebuilding MeSH dictionary " + dictionary + " with case folded labels");
+            build(meshRDF, dictionary, true);
+            d = open(dictionary);
+        }
+
+        return d;
+    }
+
+    /**
+     * Streams the MeSH N-Triples once and keeps every '@en' literal. When a label is shared by several subjects
+     * the descriptor wins, otherwise the first subject seen in the file.
+     */
+    public static void build(Path meshRDF, Path dictionary, boolean caseFold) throws IOException {
+        Builder builder = new Builder();
+
+        RDFParser.source(meshRDF).lang(Lang.NT).parse(new StreamRDFBase() {
+            @Override
+            public void triple(Triple t) {
+                Node o = t.getObject();
+
+                if (o.isLiteral() && "en".equalsIgnoreCase(o.getLiteralLanguage()) && t.getSubject().isURI())
+                    builder.add(o.getLiteralLexicalForm(), t.getSubject().getURI(), t.getPredicate().getURI());
+            }
+        });
+
+        builder.write(dictionary, caseFold);
+    }
+
+    public int size() {
+        return entries;
+    }
+
+    public boolean isCaseFolded() {
+        return foldedSlots > 0;
+    }
+
+    /**
+     * Exact lookup, falling back to the case folded table (when present) using the already lower cased term.
+     */
+    public Entry lookup(String term, String downcaseTerm) {
+        if (term == null) return null;
+
+        Entry e = find(term);
+
+        if (e == null && isCaseFolded())
+            e = findFolded(downcaseTerm != null ? downcaseTerm : term.toLowerCase(Locale.ROOT));
+
+        return e;
+    }
+
+    public Entry find(String label) {
+        int record = probe(HEADER_BYTES, exactSlots, label.getBytes(StandardCharsets.UTF_8));
+
+        return record == 0 ? null : readEntry(record);
+    }
+
+    public Entry findFolded(String label) {
+        if (!isCaseFolded()) return null;
+
+        int folded = probe(HEADER_BYTES + 4 * exactSlots, foldedSlots,
+                label.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+
+        if (folded == 0) return null;
+
+        return readEntry(buffer.getInt(folded + 4 + buffer.getInt(folded)));
+    }
+
+    private int probe(int table, int slots, byte[] key) {
+        int mask = slots - 1;
+
+        for (int i = hash(key, 0, key.length) & mask; ; i = (i + 1) & mask) {
+            int offset = buffer.getInt(table + 4 * i);
+
+            if (offset == 0) return 0;
+            if (keyEquals(offset, key)) return offset;
+        }
+    }
+
+    // absolute reads only, so a single mapped dictionary can be shared across threads
+    private boolean keyEquals(int offset, byte[] key) {
+        if (buffer.getInt(offset) != key.length) return false;
+
+        for (int i = 0, p = offset + 4; i < key.length; i++, p++)
+            if (buffer.get(p) != key[i]) return false;
+
+        return true;
+    }
+
+    private Entry readEntry(int offset) {
+        String label = readString(offset);
+        offset += 4 + buffer.getInt(offset);
+        String subject = readString(offset);
+        offset += 4 + buffer.getInt(offset);
+        String predicate = readString(offset);
+
+        return new Entry(subject, predicate, label);
+    }
+
+    private String readString(int offset) {
+        byte[] b = new byte[buffer.getInt(offset)];
+        buffer.get(offset + 4, b);
+
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    static int hash(byte[] b, int from, int to) {
+        int h = 0x811C9DC5; // FNV-1a
+
+        for (int i = from; i < to; i++) {
+            h ^= b[i];
+            h *= 0x01000193;
+        }
+
+        return h ^ (h >>> 16);
+    }
+
+    private static int slotsFor(int n) {
+        return Integer.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+    }
+
+    @Override
+    public void close() {
+        // mapped buffers are released by the GC, nothing to close explicitly.
+    }
+
+    /**
+     * Collects labels in memory and writes the hashed dictionary file. Only used once per MeSH release.
+     */
+    static class Builder {
+        private final Map<String, String[]> labels = new LinkedHashMap<>();
+
+        void add(String label, String subject, String predicate) {
+            String[] existing = labels.get(label);
+
+            if (existing == null || (!MESH_DESCRIPTOR.matcher(existing[0]).matches()
+                    && MESH_DESCRIPTOR.matcher(subject).matches()))
+                labels.put(label, new String[]{subject, predicate});
+        }
+
+        void write(Path dictionary, boolean caseFold) throws IOException {
+            int exactSlots = slotsFor(labels.size());
+            Map<String, Integer> folded = new LinkedHashMap<>();
+            int[] exactTable = new int[exactSlots];
+
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(records);
+
+            // offsets are only known once the table sizes are, so lay out records first and place them after.
+            Map<String, Integer> recordOffsets = new LinkedHashMap<>();
+            for (Map.Entry<String, String[]> e : labels.entrySet()) {
+                recordOffsets.put(e.getKey(), out.size());
+                writeString(out, e.getKey());
+                writeString(out, e.getValue()[0]);
+                writeString(out, e.getValue()[1]);
+
+                if (caseFold) folded.putIfAbsent(e.getKey().toLowerCase(Locale.ROOT), recordOffsets.get(e.getKey()));
+            }
+
+            int foldedSlots = caseFold ? slotsFor(folded.size()) : 0;
+            long recordsStart = HEADER_BYTES + 4L * exactSlots + 4L * foldedSlots;
+
+            int[] foldedTable = new int[foldedSlots];
+            for (Map.Entry<String, Integer> e : folded.entrySet()) {
+                int offset = out.size();
+                writeString(out, e.getKey());
+                out.writeInt((int) (recordsStart + e.getValue()));
+
+                place(foldedTable, e.getKey(), (int) (recordsStart + offset));
+            }
+
+            if (recordsStart + out.size() > Integer.MAX_VALUE)
+                throw new RuntimeException("Sorry, MeSH dictionary exceeds 2GB and can't be memory-mapped");
+
+            for (Map.Entry<String, Integer> e : recordOffsets.entrySet())
+                place(exactTable, e.getKey(), (int) (recordsStart + e.getValue()));
+
+            try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dictionary)))) {
+                file.writeInt(MAGIC);
+                file.writeInt(VERSION);
+                file.writeInt(labels.size());
+                file.writeInt(exactSlots);
+                file.writeInt(foldedSlots);
+                file.writeInt(0);
+
+                for (int o : exactTable) file.writeInt(o);
+                for (int o : foldedTable) file.writeInt(o);
+
+                records.writeTo(file);
+            }
+
+            System.out.println("MeSH dictionary entries : " + labels.size() + ", case folded : " + folded.size());
+        }
+
+        private static void place(int[] table, String key, int offset) {
+            byte[] b = key.getBytes(StandardCharsets.UTF_8);
+            int mask = table.length - 1;
+            int i = hash(b, 0, b.length) & mask;
+
+            while (table[i] != 0) i = (i + 1) & mask;
+
+            table[i] = offset;
+        }
+
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+/**
+ * The part of the MeSH N-Triples a BUILD's graph refers to, for the server's 'mesh' service to load instead of all of
+ * MeSH. Starting from the MeSH subjects the build linked to, every subject reachable through the 'closure' predicates
+ * (e.g. descriptor to tree numbers to parent tree numbers) is kept, with all of its triples.
+ *
+ * The file is read in newline aligned chunks by parallel threads, line by line : MeSH is canonical N-Triples, one
+ * triple per line, so subjects and objects are sliced off the line instead of parsed. A first pass collects the
+ * closure predicates' edges, a second one keeps the lines of the reached subjects, each chunk into its own part, the
+ * parts being concatenated in chunk order. Without closure predicates the first pass is skipped. Output lines are in
+ * the same order as in the MeSH file on every run.
+ */
+class MeSHSubset {
+    static final long CHUNK_BYTES = 64L << 20;
+
+    static class Stats {
+        int seeds;
+        int subjects;
+        long lines;
+        long triples;
+        long millis;
+
+        @Override
+        public String toString() {
+            return seeds + " seed subjects, " + subjects + " subjects in closure, " + triples + " of " + lines
+                    + " triples kept in " + millis + " ms";
+        }
+    }
+
+    private interface LineAction {
+        void line(String line) throws IOException;
+
+        /**
+         * Called once the chunk has been read, or failed to.
+         */
+        default void end() throws IOException { }
+    }
+
+    private final Path meshRDF;
+    private final Set<String> closure;
+    private final int parallelism;
+    private final long chunkBytes;
+
+    MeSHSubset(Path meshRDF, Collection<String> closure, int parallelism) {
+        this(meshRDF, closure, parallelism, CHUNK_BYTES);
+    }
+
+    MeSHSubset(Path meshRDF, Collection<String> closure, int parallelism, long chunkBytes) {
+        this.meshRDF = meshRDF;
+        this.closure = new HashSet<>(closure);
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkBytes = Math.max(1, chunkBytes);
+    }
+
+    /**
+     * Writes the triples of 'seeds' and of the subjects reachable from them to 'out', replacing it once complete.
+     */
+    Stats extract(Set<String> seeds, Path out) throws IOException {
+        Stats stats = new Stats();
+        long start = System.currentTimeMillis();
+
+        try (FileChannel ch = FileChannel.open(meshRDF, StandardOpenOption.READ)) {
+            List<long[]> chunks = chunks(ch);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, chunks.size())));
+
+            try {
+                Set<String> keep = closure.isEmpty() ? seeds : reach(seeds, edges(ch, chunks, executor));
+
+                stats.seeds = seeds.size();
+                stats.subjects = keep.size();
+                write(ch, chunks, executor, keep, out, stats);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        stats.millis = System.currentTimeMillis() - start;
+
+        return stats;
+    }
+
+    /**
+     * [start, end) byte ranges of about 'chunkBytes', each starting at the beginning of a line.
+     */
+    private List<long[]> chunks(FileChannel ch) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long size = ch.size(), from = 0;
+
+        while (from < size) {
+            long to = nextLine(ch, Math.min(size, from + chunkBytes));
+
+            chunks.add(new long[]{from, to});
+            from = to;
+        }
+
+        return chunks;
+    }
+
+    private static long nextLine(FileChannel ch, long pos) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1 << 12);
+        long size = ch.size();
+
+        // a chunk ending right after a newline ends there.
+        if (pos == size || (pos > 0 && byteAt(ch, pos - 1) == '\n')) return pos;
+
+        while (pos < size) {
+            b.clear();
+            int n = ch.read(b, pos);
+
+            for (int i = 0; i < n; i++)
+                if (b.get(i) == '\n') return pos + i + 1;
+
+            pos += n;
+        }
+
+        return size;
+    }
+
+    private static byte byteAt(FileChannel ch, long pos) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        ch.read(b, pos);
+
+        return b.get(0);
+    }
+
+    /**
+     * Subject to object edges of the closure predicates, for the whole file.
+     */
+    private Map<String, List<String>> edges(FileChannel ch, List<long[]> chunks, ExecutorService executor) throws IOException {
+        Map<String, List<String>> edges = new ConcurrentHashMap<>();
+
+        forEachChunk(ch, chunks, executor, chunk -> line -> {
+            String[] spo = split(line);
+
+            if (spo != null && closure.contains(spo[1]) && spo[2] != null)
+                edges.computeIfAbsent(spo[0], k -> Collections.synchronizedList(new ArrayList<>())).add(spo[2]);
+        });
+
+        return edges;
+    }
+
+    private static Set<String> reach(Set<String> seeds, Map<String, List<String>> edges) {
+        Set<String> reached = new HashSet<>(seeds);
+        Deque<String> queue = new ArrayDeque<>(seeds);
+
+        while (!queue.isEmpty())
+            for (String o : edges.getOrDefault(queue.poll(), List.of()))
+                if (reached.add(o)) queue.add(o);
+
+        return reached;
+    }
+
+    private void write(FileChannel ch, List<long[]> chunks, ExecutorService executor, Set<String> keep, Path out,
+                       Stats stats) throws IOException {
+        Path dir = out.toAbsolutePath().getParent();
+        Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
+        List<Path> parts = new ArrayList<>();
+        long[] lines = new long[chunks.size()], triples = new long[chunks.size()];
+
+        for (int i = 0; i < chunks.size(); i++) parts.add(Files.createTempFile(dir, "mesh_subset", ".part"));
+
+        try {
+            forEachChunk(ch, chunks, executor, chunk -> {
+                Writer w;
+
+                try {
+                    w = Files.newBufferedWriter(parts.get(chunk), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                return new LineAction() {
+                    @Override
+                    public void line(String line) throws IOException {
+                        lines[chunk]++;
+                        if (keep.contains(IncrementalBuild.subjectOf(line))) {
+                            w.write(line);
+                            w.write('\n');
+                            triples[chunk]++;
+                        }
+                    }
+
+                    @Override
+                    public void end() throws IOException {
+                        w.close();
+                    }
+                };
+            });
+
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                for (Path part : parts) Files.copy(part, os);
+            }
+            Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            for (Path part : parts) Files.deleteIfExists(part);
+            Files.deleteIfExists(tmp);
+        }
+
+        stats.lines = Arrays.stream(lines).sum();
+        stats.triples = Arrays.stream(triples).sum();
+    }
+
+    /**
+     * Runs each chunk's lines through the action made for it by 'actionOf', chunks in parallel on the executor.
+     */
+    private static void forEachChunk(FileChannel ch, List<long[]> chunks, ExecutorService executor,
+                                     IntFunction<LineAction> actionOf) throws IOException {
+        List<Future<?>> done = new ArrayList<>();
+
+        for (int i = 0; i < chunks.size(); i++) {
+            int chunk = i;
+
+            done.add(executor.submit(() -> {
+                LineAction action = actionOf.apply(chunk);
+
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                        new RangeInputStream(ch, chunks.get(chunk)[0], chunks.get(chunk)[1]), StandardCharsets.UTF_8), 1 << 16)) {
+                    for (String line = br.readLine(); line != null; line = br.readLine()) action.line(line);
+                } finally {
+                    action.end();
+                }
+
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> f : done) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sorry, interrupted while reading MeSH chunks", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new RuntimeException("Sorry, couldn't read MeSH chunks", e.getCause());
+        }
+    }
+
+    /**
+     * Subject, predicate and object IRI of an N-Triples line, the object null when it is a literal or blank node; null
+     * for lines which aren't a triple with IRI subject and predicate.
+     */
+    static String[] split(String line) {
+        if (!line.startsWith("<")) return null;
+
+        int s = line.indexOf('>');
+        int p0 = s < 0 ? -1 : line.indexOf('<', s + 1);
+        int p1 = p0 < 0 ? -1 : line.indexOf('>', p0 + 1);
+
+        if (p1 < 0) return null;
+
+        int o = p1 + 1;
+        while (o < line.length() && (line.charAt(o) == ' ' || line.charAt(o) == '\t')) o++;
+
+        String object = null;
+        if (o < line.length() && line.charAt(o) == '<') {
+            int end = line.indexOf('>', o + 1);
+            if (end > 0) object = line.substring(o + 1, end);
+        }
+
+        return new String[]{line.substring(1, s), line.substring(p0 + 1, p1), object};
+    }
+
+    /**
+     * Bytes [from, to) of a file, read with positional reads so threads can share the channel.
+     */
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel ch;
+        private long pos;
+        private final long end;
+
+        RangeInputStream(FileChannel ch, long from, long to) {
+            this.ch = ch;
+            this.pos = from;
+            this.end = to;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= end) return -1;
+
+            int n = ch.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+            if (n < 0) return -1;
+
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide registry of run metrics : named counters and latency histograms, per stage figures and the heap
+ * high-water mark, written at the end of a run as a JSON report with sorted keys, so two runs' reports diff cleanly.
+ *
+ * Work is attributed to a stage by thread : 'stage' marks the calling thread while the stage runs, so JDBC scans,
+ * rows and triples counted from that thread add up under it. Each stage is also recorded as a JFR event.
+ */
+class Metrics {
+    static final Metrics REGISTRY = new Metrics();
+
+    private static final long HEAP_SAMPLE_MS = 100;
+
+    interface Action {
+        void run() throws IOException;
+    }
+
+    static class Stage {
+        final String name;
+        final LongAdder rows = new LongAdder();
+        final LongAdder triples = new LongAdder();
+        final LongAdder fetchNanos = new LongAdder();
+        final LongAdder processNanos = new LongAdder();
+        final AtomicLong heapPeak = new AtomicLong();
+        volatile long wallNanos;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        Map<String, Object> report() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            double seconds = Math.max(1, wallNanos) / 1e9;
+
+            m.put("wall_ms", wallNanos / 1_000_000);
+            m.put("rows", rows.sum());
+            m.put("rows_per_s", Math.round(rows.sum() / seconds));
+            m.put("triples", triples.sum());
+            m.put("triples_per_s", Math.round(triples.sum() / seconds));
+            m.put("jdbc_fetch_ms", fetchNanos.sum() / 1_000_000);
+            m.put("jdbc_process_ms", processNanos.sum() / 1_000_000);
+            m.put("heap_peak_bytes", heapPeak.get());
+
+            return m;
+        }
+    }
+
+    /**
+     * Counts of values per power of two bucket (<= 1, 2, 4 ... 2^30, then anything above).
+     */
+    static class Histogram {
+        private static final int BUCKETS = 32;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            int b = value <= 1 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value - 1));
+
+            counts.incrementAndGet(b);
+            sum.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        long count() {
+            long n = 0;
+            for (int b = 0; b < BUCKETS; b++) n += counts.get(b);
+
+            return n;
+        }
+
+        /**
+         * Upper bound of the bucket holding the q quantile.
+         */
+        long quantile(double q) {
+            long n = count(), seen = 0, rank = (long) Math.ceil(q * n);
+
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counts.get(b);
+                if (n > 0 && seen >= rank) return Math.min(1L << b, max.get());
+            }
+
+            return max.get();
+        }
+
+        Map<String, Object> report() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            long n = count();
+
+            for (int b = 0; b < BUCKETS; b++)
+                if (counts.get(b) > 0) buckets.put(b == BUCKETS - 1 ? "inf" : "le_" + (1L << b), counts.get(b));
+
+            m.put("count", n);
+            m.put("mean", n == 0 ? 0 : sum.sum() / n);
+            m.put("p50", quantile(0.5));
+            m.put("p90", quantile(0.9));
+            m.put("p99", quantile(0.99));
+            m.put("max", max.get());
+            m.put("buckets", buckets);
+
+            return m;
+        }
+    }
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, Stage> stages = new ConcurrentSkipListMap<>();
+    private final Set<Stage> running = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Stage> current = new ThreadLocal<>();
+    private final AtomicLong heapPeak = new AtomicLong();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private ScheduledExecutorService sampler = null;
+
+    void count(String name, long n) {
+        counter(name).add(n);
+    }
+
+    /**
+     * The counter itself, for hot paths to keep instead of looking it up on every count.
+     */
+    LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    void record(String histogram, long value) {
+        histograms.computeIfAbsent(histogram, k -> new Histogram()).record(value);
+    }
+
+    /**
+     * Rows (database rows, file lines) read by the calling thread's stage.
+     */
+    void rows(long n) {
+        Stage s = current.get();
+        if (s != null) s.rows.add(n);
+    }
+
+    /**
+     * Triples emitted by the calling thread's stage.
+     */
+    void triples(long n) {
+        Stage s = current.get();
+        if (s != null) s.triples.add(n);
+    }
+
+    void scanned(String query, long rows, long fetchNanos, long processNanos) {
+        count("jdbc." + query + ".rows", rows);
+        count("jdbc." + query + ".fetch_ms", fetchNanos / 1_000_000);
+        count("jdbc." + query + ".process_ms", processNanos / 1_000_000);
+
+        Stage s = current.get();
+        if (s != null) {
+            s.rows.add(rows);
+            s.fetchNanos.add(fetchNanos);
+            s.processNanos.add(processNanos);
+        }
+    }
+
+    /**
+     * Runs 'action' as stage 'name' on the calling thread.
+     */
+    void stage(String name, Action action) throws IOException {
+        Stage s = new Stage(name);
+        Stage outer = current.get();
+        BuildEvents.Stage event = new BuildEvents.Stage();
+        long start = System.nanoTime();
+
+        stages.put(name, s);
+        running.add(s);
+        current.set(s);
+        event.begin();
+        sampleHeap();
+
+        try {
+            action.run();
+        } finally {
+            sampleHeap();
+            s.wallNanos = System.nanoTime() - start;
+            running.remove(s);
+            current.set(outer);
+
+            event.stage = name;
+            event.rows = s.rows.sum();
+            event.triples = s.triples.sum();
+            event.jdbcFetch = s.fetchNanos.sum() / 1_000_000;
+            event.jdbcProcess = s.processNanos.sum() / 1_000_000;
+            event.heapPeak = s.heapPeak.get();
+            event.commit();
+        }
+    }
+
+    synchronized void startHeapSampler() {
+        if (sampler != null) return;
+
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heap-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        sampler.scheduleAtFixedRate(this::sampleHeap, 0, HEAP_SAMPLE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stopHeapSampler() {
+        if (sampler != null) sampler.shutdownNow();
+        sampler = null;
+    }
+
+    private void sampleHeap() {
+        long used = memory.getHeapMemoryUsage().getUsed();
+
+        heapPeak.accumulateAndGet(used, Math::max);
+        for (Stage s : running) s.heapPeak.accumulateAndGet(used, Math::max);
+    }
+
+    Map<String, Object> report() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        Map<String, Object> heap = new LinkedHashMap<>();
+        Map<String, Object> stageReports = new LinkedHashMap<>();
+        Map<String, Long> counts = new LinkedHashMap<>();
+        Map<String, Object> latencies = new LinkedHashMap<>();
+
+        sampleHeap();
+        heap.put("peak_used_bytes", heapPeak.get());
+        heap.put("max_bytes", memory.getHeapMemoryUsage().getMax());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            heap.put("gc." + gc.getName() + ".count", gc.getCollectionCount());
+            heap.put("gc." + gc.getName() + ".ms", gc.getCollectionTime());
+        }
+
+        stages.forEach((name, s) -> stageReports.put(name, s.report()));
+        counters.forEach((name, c) -> counts.put(name, c.sum()));
+        histograms.forEach((name, h) -> latencies.put(name, h.report()));
+
+        m.put("heap", heap);
+        m.put("stages", stageReports);
+        m.put("counters", counts);
+        m.put("histograms", latencies);
+
+        return m;
+    }
+
+    /**
+     * Writes 'run' (what the run was : mode, arguments, times) followed by the metrics.
+     */
+    void writeReport(Path path, Map<String, Object> run) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        report.put("run", run);
+        report.putAll(report());
+
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(tmp.toFile(), report);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+
+        System.out.println("Run report : " + path);
+    }
+}
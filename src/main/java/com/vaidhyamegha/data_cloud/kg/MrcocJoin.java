@@ -0,0 +1,355 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+/**
+ * Joins the MRCOC 'article|DUI|DUI' file with the (sorted, distinct) PubMed ids linked to trials.
+ *
+ * The file is memory-mapped and split into partitions at article boundaries, i.e. into article id ranges, which
+ * are joined concurrently. Lines are parsed in place at byte level : article ids are compared numerically and DUIs
+ * are packed into longs, so nothing is allocated per line. Articles are merged against a cursor over the id array;
+ * a line out of numeric order (e.g. a file sorted lexically with a plain 'sort -u') is looked up by binary search
+ * and counted, instead of being skipped silently.
+ */
+class MrcocJoin {
+    private static final long MAX_PARTITION_BYTES = 1L << 30;
+
+    /**
+     * Receives each distinct (article, DUI) pair of a partition, in file order. One emitter per partition.
+     */
+    interface Emitter {
+        void emit(int article, long dui);
+
+        default void finish() { }
+    }
+
+    static class Stats {
+        long lines, matched, skipped, outOfOrder, malformed;
+        int articlesMatched, articlesUnmatched;
+
+        @Override
+        public String toString() {
+            return "lines=" + lines + ", matched=" + matched + ", skipped=" + skipped + ", out of order=" + outOfOrder
+                    + ", malformed=" + malformed + ", articles matched=" + articlesMatched
+                    + ", articles unmatched=" + articlesUnmatched;
+        }
+    }
+
+    private final Path file;
+    private final int[] articles;
+    private final int parallelism;
+
+    /**
+     * @param articles PubMed ids, sorted ascending and distinct.
+     */
+    MrcocJoin(Path file, int[] articles, int parallelism) {
+        this.file = file;
+        this.articles = articles;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    Stats run(IntFunction<Emitter> emitters) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            int n = (int) Math.max(parallelism, (size + MAX_PARTITION_BYTES - 1) / MAX_PARTITION_BYTES);
+            long[] bounds = boundaries(ch, size, n);
+
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            List<Future<Object[]>> futures = new ArrayList<>();
+
+            try {
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    int partition = i;
+                    long start = bounds[i], end = bounds[i + 1];
+
+                    futures.add(executor.submit(() -> {
+                        Stats stats = new Stats();
+                        BitSet matched = new BitSet(articles.length);
+                        Emitter emitter = emitters.apply(partition);
+
+                        if (end > start) join(ch.map(FileChannel.MapMode.READ_ONLY, start, end - start), emitter, stats, matched);
+
+                        emitter.finish();
+                        return new Object[]{stats, matched};
+                    }));
+                }
+
+                Stats total = new Stats();
+                BitSet matched = new BitSet(articles.length);
+
+                for (Future<Object[]> f : futures) {
+                    Object[] r = f.get();
+                    Stats s = (Stats) r[0];
+
+                    total.lines += s.lines;
+                    total.matched += s.matched;
+                    total.skipped += s.skipped;
+                    total.outOfOrder += s.outOfOrder;
+                    total.malformed += s.malformed;
+                    matched.or((BitSet) r[1]);
+                }
+
+                total.articlesMatched = matched.cardinality();
+                total.articlesUnmatched = articles.length - total.articlesMatched;
+
+                return total;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Sorry, MeSH co-occurrence join was interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new RuntimeException("Sorry, couldn't join MeSH co-occurrence links", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void join(MappedByteBuffer mb, Emitter emitter, Stats stats, BitSet matched) {
+        int limit = mb.limit();
+        int cursor = -1;
+        long lastInOrder = -1;
+        Run run = new Run(emitter);
+
+        for (int p = 0; p < limit; ) {
+            int eol = p;
+            while (eol < limit && mb.get(eol) != '\n') eol++;
+
+            int end = eol > p && mb.get(eol - 1) == '\r' ? eol - 1 : eol;
+            int start = p;
+            p = eol + 1;
+
+            if (end == start) continue;
+
+            stats.lines++;
+
+            int bar1 = indexOf(mb, start, end), bar2 = bar1 < 0 ? -1 : indexOf(mb, bar1 + 1, end);
+            long article = bar1 < 0 ? -1 : parseId(mb, start, bar1);
+            long dui1 = bar2 < 0 ? -1 : encodeDui(mb, bar1 + 1, bar2);
+            long dui2 = bar2 < 0 ? -1 : encodeDui(mb, bar2 + 1, end);
+
+            if (article < 0 || dui1 < 0 || dui2 < 0) {
+                stats.malformed++;
+                continue;
+            }
+
+            int idx;
+            if (article >= lastInOrder) {
+                cursor = cursor < 0 ? lowerBound(articles, article) : gallop(articles, cursor, article);
+                idx = cursor < articles.length && articles[cursor] == article ? cursor : -1;
+                lastInOrder = article;
+            } else {
+                stats.outOfOrder++;
+                idx = Arrays.binarySearch(articles, (int) article);
+            }
+
+            if (idx < 0) {
+                stats.skipped++;
+                continue;
+            }
+
+            stats.matched++;
+            matched.set(idx);
+
+            run.emitOnce((int) article, dui1);
+            run.emitOnce((int) article, dui2);
+        }
+    }
+
+    /**
+     * DUIs already emitted for the current article. Runs are short enough for a linear scan.
+     */
+    private static class Run {
+        private final Emitter emitter;
+        private int article = -1;
+        private long[] duis = new long[64];
+        private int size = 0;
+
+        Run(Emitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void emitOnce(int a, long dui) {
+            if (a != article) {
+                article = a;
+                size = 0;
+            }
+
+            for (int i = 0; i < size; i++) if (duis[i] == dui) return;
+
+            if (size == duis.length) duis = Arrays.copyOf(duis, size * 2);
+            duis[size++] = dui;
+
+            emitter.emit(a, dui);
+        }
+    }
+
+    /**
+     * Partition boundaries, snapped to the first line of a new article so an article never spans two partitions.
+     */
+    private static long[] boundaries(FileChannel ch, long size, int n) throws IOException {
+        long[] bounds = new long[n + 1];
+        bounds[n] = size;
+
+        for (int i = 1; i < n; i++) {
+            long b = Math.max(bounds[i - 1], snap(ch, size, size * i / n));
+            bounds[i] = b;
+        }
+
+        return bounds;
+    }
+
+    private static long snap(FileChannel ch, long size, long approx) throws IOException {
+        if (approx == 0) return 0;
+
+        Scanner sc = new Scanner(ch, size);
+        long p = sc.lineEnd(approx - 1) + 1;
+
+        if (p >= size) return size;
+
+        // article of the line before p, then skip lines of the same article.
+        long prev = p - 1;
+        while (prev > 0 && sc.byteAt(prev - 1) != '\n') prev--;
+        long article = sc.articleAt(prev);
+
+        while (p < size && sc.articleAt(p) == article) p = sc.lineEnd(p) + 1;
+
+        return Math.min(p, size);
+    }
+
+    /**
+     * Buffered positional reads, only used to place partition boundaries.
+     */
+    private static class Scanner {
+        private final FileChannel ch;
+        private final long size;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        private long bufStart = -1;
+
+        Scanner(FileChannel ch, long size) {
+            this.ch = ch;
+            this.size = size;
+        }
+
+        byte byteAt(long p) throws IOException {
+            if (bufStart < 0 || p < bufStart || p >= bufStart + buf.limit()) {
+                buf.clear();
+                bufStart = p;
+                ch.read(buf, p);
+                buf.flip();
+            }
+
+            return buf.get((int) (p - bufStart));
+        }
+
+        long lineEnd(long p) throws IOException {
+            while (p < size && byteAt(p) != '\n') p++;
+
+            return p;
+        }
+
+        long articleAt(long p) throws IOException {
+            long v = 0;
+
+            for (; p < size; p++) {
+                byte b = byteAt(p);
+                if (b < '0' || b > '9') break;
+                v = v * 10 + (b - '0');
+            }
+
+            return v;
+        }
+    }
+
+    private static int indexOf(ByteBuffer mb, int from, int to) {
+        for (int i = from; i < to; i++) if (mb.get(i) == '|') return i;
+
+        return -1;
+    }
+
+    private static long parseId(ByteBuffer mb, int from, int to) {
+        if (to <= from || to - from > 10) return -1;
+
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            byte b = mb.get(i);
+            if (b < '0' || b > '9') return -1;
+            v = v * 10 + (b - '0');
+        }
+
+        return v <= Integer.MAX_VALUE ? v : -1;
+    }
+
+    /**
+     * A DUI is a capital letter followed by digits, e.g. D012345 or C000657245. Packed as
+     * [letter : 8 bits][digit count : 8 bits][number : 48 bits] so leading zeros survive.
+     */
+    static long encodeDui(ByteBuffer mb, int from, int to) {
+        int digits = to - from - 1;
+        if (digits < 1 || digits > 12) return -1;
+
+        byte letter = mb.get(from);
+        if (letter < 'A' || letter > 'Z') return -1;
+
+        long v = 0;
+        for (int i = from + 1; i < to; i++) {
+            byte b = mb.get(i);
+            if (b < '0' || b > '9') return -1;
+            v = v * 10 + (b - '0');
+        }
+
+        return ((long) letter << 56) | ((long) digits << 48) | v;
+    }
+
+    static String decodeDui(long dui) {
+        String number = Long.toString(dui & ((1L << 48) - 1));
+        int digits = (int) ((dui >>> 48) & 0xFF);
+        StringBuilder sb = new StringBuilder(digits + 1).append((char) (dui >>> 56));
+
+        for (int i = number.length(); i < digits; i++) sb.append('0');
+
+        return sb.append(number).toString();
+    }
+
+    private static int lowerBound(int[] a, long key) {
+        int lo = 0, hi = a.length;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+
+        return lo;
+    }
+
+    // exponential search forward from the cursor, ids of consecutive lines are usually close.
+    private static int gallop(int[] a, int from, long key) {
+        if (from >= a.length || a[from] >= key) return from;
+
+        int step = 1, hi = from + 1;
+        while (hi < a.length && a[hi] < key) {
+            from = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+
+        int lo = from + 1;
+        hi = Math.min(hi, a.length);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+
+        return lo;
+    }
+}
@@ -0,0 +1,156 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of SELECT and ASK queries, keyed by dataset, the dataset's build version and the query's algebra.
+ *
+ * The algebra is printed with full IRIs and without the query's layout, so queries differing only in prefixes,
+ * whitespace or keyword case share an entry. The build version is that of the dataset's source file (or TDB2
+ * directory) when it was loaded, so entries always describe the dataset being queried. Once the endpoint reloads a
+ * dataset from a new BUILD output, it is queried under the new version and the entries of the previous one are
+ * dropped.
+ * Entries are evicted least recently used first once their estimated size passes 'maxBytes'; results bigger than a
+ * sixteenth of it are not cached, they keep streaming from the dataset.
+ */
+class QueryCache {
+
+    static class Entry {
+        final List<Var> vars;
+        final List<Binding> rows;
+        final Boolean ask;
+        final long bytes;
+
+        Entry(List<Var> vars, List<Binding> rows, Boolean ask, long bytes) {
+            this.vars = vars;
+            this.rows = rows;
+            this.ask = ask;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, String> versions = new HashMap<>();
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    QueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    long maxEntryBytes() {
+        return maxBytes / 16;
+    }
+
+    static String key(String dataset, String version, Query query) {
+        return dataset + "\n" + version + "\n" + Algebra.compile(query);
+    }
+
+    /**
+     * Last modified time and size of the dataset's source, a directory's being that of the directory itself.
+     */
+    static String versionOf(Path source) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(source, BasicFileAttributes.class);
+
+            return a.lastModifiedTime().toMillis() + "-" + a.size();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    synchronized Entry get(String dataset, String version, String key) {
+        checkVersion(dataset, version);
+
+        Entry e = entries.get(key);
+
+        if (e == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+
+        return e;
+    }
+
+    synchronized void put(String dataset, String version, String key, Entry e) {
+        checkVersion(dataset, version);
+
+        if (e.bytes > maxEntryBytes()) return;
+
+        Entry old = entries.put(key, e);
+        bytes += e.bytes - (old == null ? 0 : old.bytes);
+
+        Iterator<Entry> lru = entries.values().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            bytes -= lru.next().bytes;
+            lru.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void checkVersion(String dataset, String version) {
+        String previous = versions.put(dataset, version);
+
+        if (previous == null || previous.equals(version)) return;
+
+        String prefix = dataset + "\n";
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+
+            if (e.getKey().startsWith(prefix)) {
+                bytes -= e.getValue().bytes;
+                it.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Rough heap cost of a cached row.
+     */
+    static long sizeOf(List<Var> vars, Binding b) {
+        long size = 64;
+
+        for (Var v : vars) {
+            Node n = b.get(v);
+
+            if (n == null) continue;
+
+            size += 48 + 2L * (n.isURI() ? n.getURI().length() : n.isLiteral() ? n.getLiteralLexicalForm().length() : 16);
+        }
+
+        return size;
+    }
+
+    synchronized Map<String, Object> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long h = hits.get(), total = h + misses.get();
+
+        m.put("hits", h);
+        m.put("misses", misses.get());
+        m.put("hit_ratio", total == 0 ? 0.0 : (double) h / total);
+        m.put("evictions", evictions.get());
+        m.put("invalidations", invalidations.get());
+        m.put("entries", entries.size());
+        m.put("bytes", bytes);
+        m.put("max_bytes", maxBytes);
+
+        return m;
+    }
+}
@@ -0,0 +1,43 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket : 'permitsPerSecond' tokens are added per second and at most 'burst' are banked.
+ * Callers reserve a token and are told how long to wait for it, so nothing blocks a thread.
+ */
+class RateLimiter {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier clock;
+    private long nextFree;
+
+    RateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    /**
+     * @param clock nanoseconds, as System.nanoTime.
+     */
+    RateLimiter(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond must be positive");
+
+        this.intervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+        this.burstNanos = intervalNanos * (Math.max(1, burst) - 1);
+        this.clock = clock;
+        this.nextFree = clock.getAsLong();
+    }
+
+    synchronized Duration reserve() {
+        long now = clock.getAsLong();
+
+        // an idle bucket refills up to 'burst' tokens, never more.
+        if (nextFree < now - burstNanos) nextFree = now - burstNanos;
+
+        long wait = Math.max(0, nextFree - now);
+        nextFree += intervalNanos;
+
+        return Duration.ofNanos(wait);
+    }
+}
@@ -0,0 +1,110 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.*;
+
+/**
+ * Binary RDF Thrift (https://jena.apache.org/documentation/io/rdf-binary.html) copy of an N-Triples file, kept next
+ * to it with the '.rt' extension. Loading it skips N-Triples tokenizing and IRI parsing. IRIs under the namespaces
+ * below are written as prefix name pairs, the prefix table being sent once at the start of the stream.
+ */
+class RdfSnapshot {
+    static final Map<String, String> PREFIXES = new LinkedHashMap<>();
+
+    static {
+        PREFIXES.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+        PREFIXES.put("rdfs", "http://www.w3.org/2000/01/rdf-schema#");
+        PREFIXES.put("edge", NAMED_EDGE);
+        PREFIXES.put("ct", "https://clinicaltrials.gov/ct2/show/");
+        PREFIXES.put("ictrp", "https://www.who.int/clinical-trials-registry-platform/");
+        PREFIXES.put("pubmed", "https://pubmed.ncbi.nlm.nih.gov/");
+        PREFIXES.put("dui", "https://meshb.nlm.nih.gov/record/ui?ui=");
+        PREFIXES.put("gene", "https://www.ncbi.nlm.nih.gov/gene/");
+        PREFIXES.put("meshv", "http://id.nlm.nih.gov/mesh/vocab#");
+        // any MeSH release, e.g. mesh:2022/D001249, after the vocabulary it also holds.
+        PREFIXES.put("mesh", "http://id.nlm.nih.gov/mesh/");
+    }
+
+    static Path of(Path nTriples) {
+        String name = nTriples.getFileName().toString();
+        String base = name.endsWith(".nt") ? name.substring(0, name.length() - 3) : name;
+
+        return nTriples.resolveSibling(base + ".rt");
+    }
+
+    /**
+     * A snapshot is used only when it is at least as recent as its N-Triples file (or that file is gone).
+     */
+    static boolean isFresh(Path nTriples) throws IOException {
+        Path rt = of(nTriples);
+
+        if (!Files.exists(rt)) return false;
+
+        return !Files.exists(nTriples)
+                || Files.getLastModifiedTime(rt).compareTo(Files.getLastModifiedTime(nTriples)) >= 0;
+    }
+
+    /**
+     * Streams 'nTriples' into its snapshot, written to a temporary file first so readers never see half of it.
+     */
+    static Path write(Path nTriples) throws IOException {
+        Path rt = of(nTriples);
+        Path tmp = rt.resolveSibling(rt.getFileName() + ".tmp");
+        long start = System.currentTimeMillis();
+
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp), OUTPUT_BUFFER_BYTES)) {
+            StreamRDF out = StreamRDFWriter.getWriterStream(os, Lang.RDFTHRIFT);
+
+            out.start();
+            PREFIXES.forEach(out::prefix);
+
+            RDFParser.source(nTriples).lang(Lang.NT).parse(new StreamRDFWrapper(out) {
+                @Override
+                public void start() { }
+
+                @Override
+                public void finish() { }
+            });
+
+            out.finish();
+        }
+
+        Files.move(tmp, rt, StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Snapshot " + rt + " written in " + (System.currentTimeMillis() - start) + " ms");
+
+        return rt;
+    }
+
+    /**
+     * Reads the snapshot of 'nTriples' when fresh, else the N-Triples file itself.
+     *
+     * @return the file read.
+     */
+    static Path read(Model model, Path nTriples) throws IOException {
+        long start = System.currentTimeMillis();
+        Path source = isFresh(nTriples) ? of(nTriples) : nTriples;
+
+        RDFDataMgr.read(model, source.toString(), source.equals(nTriples) ? Lang.NT : Lang.RDFTHRIFT);
+
+        System.out.println("Loaded " + model.size() + " triples from " + source + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        return source;
+    }
+}
@@ -0,0 +1,337 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.OUTPUT_BUFFER_BYTES;
+
+/**
+ * Writes the BUILD output as N-Triples shards, optionally gzip compressed, for bulk loaders to ingest concurrently.
+ *
+ * By subject, a triple goes to shard hash(subject) mod N, so all statements about a resource land in one shard. One
+ * thread reads the sources in order and hands triples in batches to N writer threads, which serialise and compress
+ * in parallel; every shard thus gets the same triples in the same order on every run. By stage, each source is
+ * written to its own shards by its own thread. A shard rolls over to a new part once it reaches the triple or byte
+ * cap. Shards are written to a sibling directory swapped in once complete, with a manifest.json listing each file's
+ * triple count, size and SHA-256, and the same checksums in SHA256SUMS for 'sha256sum -c'.
+ */
+class ShardedOutput {
+    private static final int BATCH = 4096;
+    private static final int QUEUED_BATCHES = 8;
+    private static final List<Triple> END = Collections.emptyList();
+
+    enum Partition {SUBJECT, STAGE}
+
+    static class Shard {
+        final String file;
+        final long triples;
+        final long bytes;
+        final String sha256;
+
+        Shard(String file, long triples, long bytes, String sha256) {
+            this.file = file;
+            this.triples = triples;
+            this.bytes = bytes;
+            this.sha256 = sha256;
+        }
+    }
+
+    private final Path dir;
+    private final int shards;
+    private final boolean gzip;
+    private final Partition partition;
+    private final long maxTriples;
+    private final long maxBytes;
+
+    /**
+     * @param shards     number of shards by subject, of concurrently written sources by stage.
+     * @param maxTriples triples per shard file before rolling over to the next part, 0 for no cap.
+     * @param maxBytes   bytes (as written, i.e. compressed) per shard file before rolling over, 0 for no cap.
+     */
+    ShardedOutput(Path dir, int shards, boolean gzip, Partition partition, long maxTriples, long maxBytes) {
+        this.dir = dir;
+        this.shards = Math.max(1, shards);
+        this.gzip = gzip;
+        this.partition = partition;
+        this.maxTriples = maxTriples;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param sources named producers, each streaming its triples into the StreamRDF handed to it.
+     * @return the shard files written, in file name order.
+     */
+    List<Shard> write(Map<String, Consumer<StreamRDF>> sources) throws IOException {
+        Path next = dir.resolveSibling(dir.getFileName() + ".next");
+        long start = System.currentTimeMillis();
+
+        Directories.deleteRecursively(next);
+        Files.createDirectories(next);
+
+        List<Shard> written = partition == Partition.SUBJECT ? bySubject(next, sources) : byStage(next, sources);
+        written.sort(Comparator.comparing(s -> s.file));
+
+        writeManifest(next, written);
+
+        Directories.swap(next, dir);
+
+        long triples = written.stream().mapToLong(s -> s.triples).sum();
+        System.out.println("Shards " + dir + " : " + written.size() + " files, " + triples + " triples by "
+                + partition.name().toLowerCase() + " in " + (System.currentTimeMillis() - start) + " ms");
+
+        return written;
+    }
+
+    private List<Shard> bySubject(Path out, Map<String, Consumer<StreamRDF>> sources) throws IOException {
+        List<BlockingQueue<List<Triple>>> queues = new ArrayList<>();
+        List<Future<List<Shard>>> writers = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(shards);
+
+        try {
+            for (int i = 0; i < shards; i++) {
+                BlockingQueue<List<Triple>> q = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+                ShardStream s = new ShardStream(out, String.format("part-%05d", i));
+
+                queues.add(q);
+                writers.add(executor.submit(() -> s.drain(q)));
+            }
+
+            List<List<Triple>> batches = new ArrayList<>();
+            for (int i = 0; i < shards; i++) batches.add(new ArrayList<>(BATCH));
+
+            StreamRDF router = new StreamRDFBase() {
+                @Override
+                public void triple(Triple t) {
+                    int i = Math.floorMod(t.getSubject().hashCode(), shards);
+                    List<Triple> b = batches.get(i);
+
+                    b.add(t);
+                    if (b.size() == BATCH) {
+                        put(queues.get(i), b, writers.get(i));
+                        batches.set(i, new ArrayList<>(BATCH));
+                    }
+                }
+            };
+
+            for (Consumer<StreamRDF> source : sources.values()) source.accept(router);
+
+            for (int i = 0; i < shards; i++) {
+                if (!batches.get(i).isEmpty()) put(queues.get(i), batches.get(i), writers.get(i));
+                put(queues.get(i), END, writers.get(i));
+            }
+
+            return collect(writers);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Shard> byStage(Path out, Map<String, Consumer<StreamRDF>> sources) throws IOException {
+        List<Future<List<Shard>>> writers = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(shards, Math.max(1, sources.size())));
+
+        try {
+            for (Map.Entry<String, Consumer<StreamRDF>> source : sources.entrySet()) {
+                ShardStream s = new ShardStream(out, source.getKey());
+
+                writers.add(executor.submit(() -> {
+                    source.getValue().accept(new StreamRDFBase() {
+                        @Override
+                        public void triple(Triple t) {
+                            s.triple(t);
+                        }
+                    });
+
+                    return s.close();
+                }));
+            }
+
+            return collect(writers);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Blocks while the writer is behind, gives up once it has failed (it stops draining then).
+     */
+    private static void put(BlockingQueue<List<Triple>> q, List<Triple> batch, Future<?> writer) {
+        try {
+            while (!q.offer(batch, 100, TimeUnit.MILLISECONDS))
+                if (writer.isDone()) {
+                    writer.get();
+                    throw new IllegalStateException("Sorry, a shard writer stopped early");
+                }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Sorry, interrupted while writing shards", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Sorry, couldn't write shards", e.getCause());
+        }
+    }
+
+    private static List<Shard> collect(List<Future<List<Shard>>> writers) throws IOException {
+        List<Shard> written = new ArrayList<>();
+
+        try {
+            for (Future<List<Shard>> w : writers) written.addAll(w.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sorry, interrupted while writing shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new RuntimeException("Sorry, couldn't write shards", e.getCause());
+        }
+
+        return written;
+    }
+
+    /**
+     * The parts of one shard : '<name>-000.nt[.gz]', '<name>-001.nt[.gz]' ... written by a single thread.
+     */
+    private class ShardStream {
+        private final Path out;
+        private final String name;
+        private final List<Shard> parts = new ArrayList<>();
+
+        private int part = 0;
+        private String file;
+        private OutputStream os;
+        private CountingOutputStream counter;
+        private MessageDigest digest;
+        private StreamRDF writer;
+        private long triples;
+
+        ShardStream(Path out, String name) {
+            this.out = out;
+            this.name = name;
+        }
+
+        List<Shard> drain(BlockingQueue<List<Triple>> q) throws IOException, InterruptedException {
+            for (List<Triple> batch = q.take(); batch != END; batch = q.take())
+                for (Triple t : batch) triple(t);
+
+            return close();
+        }
+
+        void triple(Triple t) {
+            try {
+                if (writer == null) open();
+
+                writer.triple(t);
+                triples++;
+
+                if ((maxTriples > 0 && triples >= maxTriples) || (maxBytes > 0 && counter.count >= maxBytes)) finishPart();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<Shard> close() throws IOException {
+            if (writer != null) finishPart();
+
+            return parts;
+        }
+
+        private void open() throws IOException {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+
+            file = String.format("%s-%03d.nt%s", name, part++, gzip ? ".gz" : "");
+            counter = new CountingOutputStream(new DigestOutputStream(Files.newOutputStream(out.resolve(file)), digest));
+            os = gzip ? new BufferedOutputStream(new GZIPOutputStream(counter, 1 << 16), OUTPUT_BUFFER_BYTES)
+                    : new BufferedOutputStream(counter, OUTPUT_BUFFER_BYTES);
+            writer = StreamRDFWriter.getWriterStream(os, Lang.NT);
+            writer.start();
+            triples = 0;
+        }
+
+        private void finishPart() throws IOException {
+            writer.finish();
+            os.close();
+
+            parts.add(new Shard(file, triples, counter.count, HexFormat.of().formatHex(digest.digest())));
+            writer = null;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private void writeManifest(Path out, List<Shard> written) throws IOException {
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        List<Map<String, Object>> files = new ArrayList<>();
+        StringBuilder sums = new StringBuilder();
+
+        for (Shard s : written) {
+            Map<String, Object> f = new LinkedHashMap<>();
+            f.put("file", s.file);
+            f.put("triples", s.triples);
+            f.put("bytes", s.bytes);
+            f.put("sha256", s.sha256);
+            files.add(f);
+
+            sums.append(s.sha256).append("  ").append(s.file).append('\n');
+        }
+
+        manifest.put("format", "application/n-triples");
+        manifest.put("compression", gzip ? "gzip" : "none");
+        manifest.put("partition", partition.name().toLowerCase());
+        manifest.put("triples", written.stream().mapToLong(s -> s.triples).sum());
+        manifest.put("shards", files);
+
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out.resolve("manifest.json").toFile(), manifest);
+        Files.writeString(out.resolve("SHA256SUMS"), sums.toString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Shard files listed in the manifest of 'dir', in manifest order.
+     */
+    static List<Path> files(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+
+        for (JsonNode f : new ObjectMapper().readTree(dir.resolve("manifest.json").toFile()).get("shards"))
+            files.add(dir.resolve(f.get("file").asText()));
+
+        return files;
+    }
+}
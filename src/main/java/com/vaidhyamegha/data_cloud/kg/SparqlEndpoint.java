@@ -0,0 +1,536 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.util.FmtUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.WebFilter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+
+/**
+ * SPARQL 1.1 query endpoint (https://www.w3.org/TR/sparql11-protocol/) over the datasets loaded once by server mode,
+ * at /sparql/{dataset}. SELECT and ASK results are streamed as SPARQL JSON or TSV.
+ *
+ * Each admitted query runs on its own thread inside a read transaction and only produces rows as the client
+ * requests them, so a slow client holds back its query instead of buffering its results. At most 'maxConcurrent'
+ * queries run at once; a request waits up to 'admissionWaitMs' for a slot, then gets 503. A query is aborted once it
+ * runs past 'timeoutMs', whether it is evaluating or waiting on the client. The slot is given back when the query ends,
+ * or at the latest when the exchange ends, so a client leaving before its results are written doesn't keep it.
+ * Results small enough are kept in a {@link QueryCache}, whose hit and miss counts are served at /metrics/query-cache.
+ * Given a {@link Loader}, the endpoint checks the dataset sources every so often and reloads a dataset once a new
+ * BUILD output has replaced its source, the cache then dropping the results of the previous one.
+ *
+ * When BUILD materialized {@link EntityDocuments}, /entities/{kind}/{id} (e.g. /entities/trial/NCT01874691) serves an
+ * entity's JSON-LD document straight from the mapped file, without a query.
+ */
+class SparqlEndpoint {
+    private static final MediaType SPARQL_JSON = MediaType.parseMediaType("application/sparql-results+json");
+    private static final MediaType TSV = MediaType.parseMediaType("text/tab-separated-values");
+    private static final MediaType SPARQL_QUERY = MediaType.parseMediaType("application/sparql-query");
+    private static final MediaType JSON_LD = MediaType.parseMediaType("application/ld+json");
+    private static final String SLOT = SparqlEndpoint.class.getName() + ".slot";
+
+    /**
+     * Loads a dataset from its source, again each time the source changes.
+     */
+    interface Loader {
+        Dataset load(Path source) throws IOException;
+    }
+
+    /**
+     * A dataset with the build version of the source it was loaded from, replaced as a whole on reload.
+     */
+    private static class Loaded {
+        final Dataset dataset;
+        final String version;
+
+        Loaded(Dataset dataset, String version) {
+            this.dataset = dataset;
+            this.version = version;
+        }
+    }
+
+    private final Map<String, Loaded> datasets = new ConcurrentHashMap<>();
+    private final Map<String, Path> sources;
+    // version each source had at the previous check, read by the reload thread only.
+    private final Map<String, String> checked = new HashMap<>();
+    private Loader loader = null;
+    private long checkMs = 0;
+    private final QueryCache cache;
+    private final EntityDocuments entities;
+    private final Semaphore slots;
+    private final long admissionWaitMs;
+    private final long timeoutMs;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "sparql-query");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param sources  file (or TDB2 directory) each dataset was just loaded from, its build version for the cache.
+     * @param cache    null to evaluate every query.
+     * @param entities null when BUILD didn't write entity documents.
+     */
+    SparqlEndpoint(Map<String, Dataset> datasets, Map<String, Path> sources, QueryCache cache, EntityDocuments entities,
+                   int maxConcurrent, long admissionWaitMs, long timeoutMs) {
+        datasets.forEach((name, ds) -> this.datasets.put(name, new Loaded(ds, QueryCache.versionOf(sources.get(name)))));
+        this.sources = sources;
+        this.cache = cache;
+        this.entities = entities;
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+        this.admissionWaitMs = admissionWaitMs;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Reloads a dataset with 'loader' once its source changed and then stayed the same for 'checkMs' : BUILD writes
+     * its output in place, it isn't read before it is complete. A TDB2 dataset is swapped in whole by BUILD.
+     */
+    SparqlEndpoint reloadOnChange(Loader loader, long checkMs) {
+        this.loader = loader;
+        this.checkMs = checkMs;
+
+        return this;
+    }
+
+    DisposableServer start(int port) {
+        if (loader != null && checkMs > 0) {
+            ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "sparql-reload");
+                t.setDaemon(true);
+                return t;
+            });
+
+            checker.scheduleWithFixedDelay(this::reloadChanged, checkMs, checkMs, TimeUnit.MILLISECONDS);
+        }
+
+        DisposableServer server = HttpServer.create()
+                .port(port)
+                .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(routes(),
+                        HandlerStrategies.builder().webFilter(releaseSlot()).build())))
+                .bindNow();
+
+        System.out.println("SPARQL endpoint listening on port " + port + " for " + datasets.keySet());
+
+        return server;
+    }
+
+    /**
+     * Gives back the slot of an exchange once it ends, however it ends.
+     */
+    private static WebFilter releaseSlot() {
+        return (exchange, chain) -> chain.filter(exchange).doFinally(signal -> {
+            Slot slot = exchange.getAttribute(SLOT);
+            if (slot != null) slot.release();
+        });
+    }
+
+    /**
+     * Queries already running finish on the in-memory dataset they started on, the next ones run on the new one.
+     */
+    private void reloadChanged() {
+        for (Map.Entry<String, Path> e : sources.entrySet()) {
+            String name = e.getKey();
+            String version = QueryCache.versionOf(e.getValue());
+            String previous = checked.put(name, version);
+
+            if (version.equals("unknown") || version.equals(datasets.get(name).version) || !version.equals(previous))
+                continue;
+
+            try {
+                long start = System.currentTimeMillis();
+
+                datasets.put(name, new Loaded(loader.load(e.getValue()), version));
+                System.out.println("Dataset " + name + " reloaded from " + e.getValue() + " in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (IOException | RuntimeException ex) {
+                // tried again at the next check.
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    int availableSlots() {
+        return slots.availablePermits();
+    }
+
+    static String url(int port, String dataset) {
+        return "http://localhost:" + port + "/sparql/" + dataset;
+    }
+
+    RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route(GET("/sparql/{dataset}"), r -> query(r, Mono.justOrEmpty(r.queryParam("query"))))
+                .andRoute(POST("/sparql/{dataset}"), r -> query(r, queryOf(r)))
+                .andRoute(GET("/metrics/query-cache"), r -> cache == null ? ServerResponse.notFound().build()
+                        : ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(cache.metrics()))
+                .andRoute(GET(EntityDocuments.CONTEXT_PATH), r -> entities == null ? ServerResponse.notFound().build()
+                        : ServerResponse.ok().contentType(JSON_LD).bodyValue(EntityDocuments.context()))
+                // ICTRP ids hold slashes, so the id is the rest of the path.
+                .andRoute(GET("/entities/{kind}/{*id}"), this::entity);
+    }
+
+    /**
+     * The mapped bytes are handed to the response as they are, one lookup and no copy.
+     */
+    private Mono<ServerResponse> entity(ServerRequest r) {
+        ByteBuffer doc = entities == null ? null
+                : entities.get(r.pathVariable("kind").toLowerCase(Locale.ROOT) + r.pathVariable("id"));
+
+        if (doc == null) return ServerResponse.notFound().build();
+
+        return ServerResponse.ok().contentType(JSON_LD)
+                .body(BodyInserters.fromDataBuffers(Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(doc))));
+    }
+
+    private static Mono<String> queryOf(ServerRequest r) {
+        MediaType type = r.headers().contentType().orElse(MediaType.APPLICATION_FORM_URLENCODED);
+
+        if (SPARQL_QUERY.isCompatibleWith(type)) return r.bodyToMono(String.class);
+
+        return r.formData().flatMap(form -> Mono.justOrEmpty(form.getFirst("query")));
+    }
+
+    private Mono<ServerResponse> query(ServerRequest r, Mono<String> text) {
+        String name = r.pathVariable("dataset");
+
+        if (!datasets.containsKey(name)) return ServerResponse.notFound().build();
+
+        MediaType type = r.queryParam("format").map(f -> f.equalsIgnoreCase("tsv") ? TSV : SPARQL_JSON)
+                .orElseGet(() -> negotiate(r.headers().accept()));
+
+        return text.switchIfEmpty(Mono.error(new IllegalArgumentException("missing 'query'")))
+                .map(QueryFactory::create)
+                .flatMap(q -> {
+                    if (!q.isSelectType() && !q.isAskType())
+                        return ServerResponse.badRequest().bodyValue("Sorry, only SELECT and ASK queries are supported\n");
+
+                    Slot slot = new Slot();
+                    r.attributes().put(SLOT, slot);
+
+                    return admit(slot).flatMap(admitted -> admitted
+                            ? ServerResponse.ok().contentType(type).body(BodyInserters.fromDataBuffers(execute(name, q, type, slot)))
+                            : ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1")
+                                .bodyValue("Sorry, too many concurrent queries\n"));
+                })
+                .onErrorResume(e -> e instanceof QueryException || e instanceof IllegalArgumentException,
+                        e -> ServerResponse.badRequest().bodyValue("Sorry, " + e.getMessage() + "\n"));
+    }
+
+    /**
+     * The first of SPARQL JSON and TSV the client accepts, by quality then specificity. A wildcard, or no Accept
+     * header, gets SPARQL JSON.
+     */
+    static MediaType negotiate(List<MediaType> accept) {
+        List<MediaType> sorted = new ArrayList<>(accept);
+        MediaType.sortBySpecificityAndQuality(sorted);
+
+        for (MediaType m : sorted) {
+            if (m.getQualityValue() == 0) continue;
+            if (m.isWildcardType() || (m.isWildcardSubtype() && !TSV.getType().equals(m.getType()))) return SPARQL_JSON;
+            if (m.isCompatibleWith(SPARQL_JSON) || m.isCompatibleWith(MediaType.APPLICATION_JSON)) return SPARQL_JSON;
+            if (m.isCompatibleWith(TSV)) return TSV;
+        }
+
+        return SPARQL_JSON;
+    }
+
+    private Mono<Boolean> admit(Slot slot) {
+        return Mono.fromCallable(() -> slots.tryAcquire(admissionWaitMs, TimeUnit.MILLISECONDS) && slot.hold())
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * The admission permit of one exchange, released once : by the query's thread as it ends, else when the exchange
+     * ends. A permit acquired after the exchange ended is given back at once.
+     */
+    private class Slot {
+        private boolean held = false;
+        private boolean released = false;
+
+        synchronized boolean hold() {
+            if (released) {
+                slots.release();
+                return false;
+            }
+
+            held = true;
+            return true;
+        }
+
+        synchronized void release() {
+            if (held) slots.release();
+
+            held = false;
+            released = true;
+        }
+    }
+
+    /**
+     * Rows are produced on demand by the query's thread, which holds the admission slot until it ends. A cached
+     * result is replayed the same way, without touching the dataset.
+     */
+    private Flux<DataBuffer> execute(String name, Query q, MediaType type, Slot slot) {
+        Loaded loaded = datasets.get(name);
+        Dataset ds = loaded.dataset;
+
+        return Flux.create(sink -> {
+            Demand demand = new Demand();
+            sink.onRequest(demand::add);
+            sink.onCancel(demand::cancel);
+
+            executor.execute(() -> {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                String version = loaded.version;
+                String key = cache == null ? null : QueryCache.key(name, version, q);
+                QueryCache.Entry hit = cache == null ? null : cache.get(name, version, key);
+
+                if (hit != null) {
+                    try {
+                        write(hit.vars, hit.ask, hit.rows.iterator(), type, sink, demand, deadline, null);
+                        sink.complete();
+                    } catch (Exception e) {
+                        sink.error(e);
+                    } finally {
+                        slot.release();
+                    }
+                    return;
+                }
+
+                boolean txn = ds.supportsTransactions();
+
+                if (txn) ds.begin(ReadWrite.READ);
+
+                try (QueryExecution qexec = QueryExecution.create().query(q).dataset(ds)
+                        .timeout(timeoutMs, TimeUnit.MILLISECONDS).build()) {
+                    if (q.isAskType()) {
+                        boolean answer = qexec.execAsk();
+                        write(List.of(), answer, Collections.emptyIterator(), type, sink, demand, deadline, qexec);
+
+                        if (cache != null) cache.put(name, version, key, new QueryCache.Entry(List.of(), List.of(), answer, 64));
+                    } else {
+                        ResultSet rs = qexec.execSelect();
+                        List<Var> vars = Var.varList(rs.getResultVars());
+                        Recorder recorder = new Recorder(vars, rs, cache == null ? 0 : cache.maxEntryBytes());
+
+                        write(vars, null, recorder, type, sink, demand, deadline, qexec);
+
+                        if (cache != null && recorder.complete())
+                            cache.put(name, version, key, new QueryCache.Entry(vars, recorder.rows, null, recorder.bytes));
+                    }
+
+                    sink.complete();
+                } catch (Exception e) {
+                    sink.error(e);
+                } finally {
+                    if (txn) ds.end();
+                    slot.release();
+                }
+            });
+        }, FluxSink.OverflowStrategy.ERROR);
+    }
+
+    private void write(List<Var> vars, Boolean ask, Iterator<Binding> rows, MediaType type, FluxSink<DataBuffer> sink,
+                       Demand demand, long deadline, QueryExecution qexec) throws InterruptedException, JsonProcessingException {
+        boolean json = type != TSV;
+
+        if (ask != null) {
+            next(sink, demand, deadline, qexec, json ? "{\"head\":{},\"boolean\":" + ask + "}\n" : "?_askResult\n" + ask + "\n");
+            return;
+        }
+
+        List<String> names = Var.varNames(vars);
+
+        next(sink, demand, deadline, qexec, json
+                ? "{\"head\":{\"vars\":" + mapper.writeValueAsString(names) + "},\"results\":{\"bindings\":[\n"
+                : "?" + String.join("\t?", names) + "\n");
+
+        boolean first = true;
+
+        while (rows.hasNext()) {
+            Binding b = rows.next();
+
+            next(sink, demand, deadline, qexec, json ? (first ? "" : ",\n") + jsonRow(vars, b) : tsvRow(vars, b));
+            first = false;
+        }
+
+        if (json) next(sink, demand, deadline, qexec, "\n]}}\n");
+    }
+
+    /**
+     * Emits once the client wants more, aborts the query when it cancelled or stopped reading past the timeout.
+     */
+    private static void next(FluxSink<DataBuffer> sink, Demand demand, long deadline, QueryExecution qexec, String s)
+            throws InterruptedException {
+        if (!demand.take(deadline)) {
+            if (qexec != null) qexec.abort();
+            throw new QueryCancelledException();
+        }
+
+        sink.next(bytes(s));
+    }
+
+    /**
+     * Keeps the rows streamed from a result set while they fit in 'maxBytes', for the cache.
+     */
+    private static class Recorder implements Iterator<Binding> {
+        private final List<Var> vars;
+        private final ResultSet rs;
+        private final long maxBytes;
+        private List<Binding> rows = new ArrayList<>();
+        private long bytes = 0;
+
+        Recorder(List<Var> vars, ResultSet rs, long maxBytes) {
+            this.vars = vars;
+            this.rs = rs;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rs.hasNext();
+        }
+
+        @Override
+        public Binding next() {
+            Binding b = rs.nextBinding();
+
+            if (rows != null) {
+                bytes += QueryCache.sizeOf(vars, b);
+
+                if (bytes <= maxBytes) rows.add(detach(b));
+                else rows = null;
+            }
+
+            return b;
+        }
+
+        // TDB2 bindings resolve their nodes lazily, within the read transaction only.
+        private Binding detach(Binding b) {
+            BindingBuilder copy = Binding.builder();
+
+            for (Var v : vars) {
+                Node n = b.get(v);
+                if (n != null) copy.add(v, n);
+            }
+
+            return copy.build();
+        }
+
+        boolean complete() {
+            return rows != null && !rs.hasNext();
+        }
+    }
+
+    private String jsonRow(List<Var> vars, Binding b) throws JsonProcessingException {
+        Map<String, Object> row = new LinkedHashMap<>();
+
+        for (Var v : vars) {
+            Node n = b.get(v);
+            if (n == null) continue;
+
+            Map<String, String> term = new LinkedHashMap<>();
+
+            if (n.isURI()) {
+                term.put("type", "uri");
+                term.put("value", n.getURI());
+            } else if (n.isBlank()) {
+                term.put("type", "bnode");
+                term.put("value", n.getBlankNodeLabel());
+            } else {
+                term.put("type", "literal");
+                term.put("value", n.getLiteralLexicalForm());
+
+                if (!n.getLiteralLanguage().isEmpty()) term.put("xml:lang", n.getLiteralLanguage());
+                else if (!XSDDatatype.XSDstring.getURI().equals(n.getLiteralDatatypeURI()))
+                    term.put("datatype", n.getLiteralDatatypeURI());
+            }
+
+            row.put(v.getVarName(), term);
+        }
+
+        return mapper.writeValueAsString(row);
+    }
+
+    private static String tsvRow(List<Var> vars, Binding b) {
+        StringJoiner row = new StringJoiner("\t", "", "\n");
+
+        for (Var v : vars) {
+            Node n = b.get(v);
+            row.add(n == null ? "" : FmtUtils.stringForNode(n));
+        }
+
+        return row.toString();
+    }
+
+    private static DataBuffer bytes(String s) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Rows requested by the client and not yet produced.
+     */
+    private static class Demand {
+        private long requested = 0;
+        private boolean cancelled = false;
+
+        synchronized void add(long n) {
+            requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            notifyAll();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for demand for one more row, false when cancelled or past the deadline.
+         */
+        synchronized boolean take(long deadline) throws InterruptedException {
+            while (requested == 0 && !cancelled) {
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0) return false;
+
+                TimeUnit.NANOSECONDS.timedWait(this, wait);
+            }
+
+            if (cancelled) return false;
+            if (requested != Long.MAX_VALUE) requested--;
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Runs BUILD stages on a bounded pool, each into its own spool. Stages start as soon as the stages they depend on
+ * are done. Spools are handed back in declaration order, so merging them gives the same output on every run.
+ */
+class StageScheduler {
+    private final int parallelism;
+    private final Function<String, TripleSpool> spoolOf;
+    // printed once the stages are done, the run report has them too as each stage's wall_ms.
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * @param spoolOf the spool of a stage, by stage name.
+     */
+    StageScheduler(int parallelism, Function<String, TripleSpool> spoolOf) {
+        this.parallelism = Math.max(1, parallelism);
+        this.spoolOf = spoolOf;
+    }
+
+    LinkedHashMap<String, TripleSpool> run(List<BuildStage> stages) {
+        LinkedHashMap<String, TripleSpool> spools = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+        long start = System.currentTimeMillis();
+
+        try {
+            for (BuildStage stage : stages) {
+                TripleSpool spool = spoolOf.apply(stage.name);
+                spools.put(stage.name, spool);
+
+                CompletableFuture<?>[] deps = stage.dependsOn.stream().map(d -> {
+                    if (!futures.containsKey(d))
+                        throw new RuntimeException("Sorry, stage " + stage.name + " depends on unknown or later stage " + d);
+                    return futures.get(d);
+                }).toArray(CompletableFuture[]::new);
+
+                futures.put(stage.name, CompletableFuture.allOf(deps).thenRunAsync(() -> runStage(stage, spool), executor));
+            }
+
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            spools.values().forEach(StageScheduler::closeQuietly);
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException("Sorry, a build stage failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (Map.Entry<String, TripleSpool> e : spools.entrySet())
+            System.out.println("Stage " + e.getKey() + " : " + timings.get(e.getKey()) + " ms, "
+                    + e.getValue().size() + " triples");
+        System.out.println("All stages : " + (System.currentTimeMillis() - start) + " ms with parallelism " + parallelism);
+
+        return spools;
+    }
+
+    private void runStage(BuildStage stage, TripleSpool spool) {
+        long t = System.currentTimeMillis();
+
+        try {
+            Metrics.REGISTRY.stage(stage.name, () -> {
+                StreamRDF sink = spool.sink();
+
+                sink.start();
+                stage.body.accept(sink);
+                sink.finish();
+
+                spool.seal();
+                Metrics.REGISTRY.triples(spool.size());
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sorry, couldn't spool stage " + stage.name, e);
+        }
+
+        timings.put(stage.name, System.currentTimeMillis() - t);
+    }
+
+    private static void closeQuietly(TripleSpool spool) {
+        try {
+            spool.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
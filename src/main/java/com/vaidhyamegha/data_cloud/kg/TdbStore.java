@@ -0,0 +1,73 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * On-disk TDB2 dataset holding the BUILD output, queried in place : its indexes are memory-mapped B+trees, so opening
+ * it takes milliseconds and queries only page in what they touch, whatever the size of the graph.
+ */
+class TdbStore {
+
+    private TdbStore() { }
+
+    static boolean exists(Path dir) {
+        return Files.isDirectory(dir) && DatabaseMgr.isTDB2(dir.toString());
+    }
+
+    static Dataset connect(Path dir) {
+        return TDB2Factory.connectDataset(dir.toString());
+    }
+
+    /**
+     * Connects to the dataset now in 'dir', after a BUILD swapped it in : the connection to the previous one is
+     * dropped first, else it would be handed out again for the same directory. A query still reading the previous
+     * dataset can fail.
+     */
+    static Dataset reconnect(Path dir) {
+        TDBInternal.expel(DatabaseMgr.connectDatasetGraph(dir.toString()));
+
+        return connect(dir);
+    }
+
+    /**
+     * Loads 'files' into a new dataset with the parallel bulk loader (one thread per index), then swaps it in place
+     * of 'dir'. Loading into an empty dataset is what lets the loader build the indexes in bulk.
+     */
+    static void bulkLoad(Path dir, Path... files) throws IOException {
+        Path next = dir.resolveSibling(dir.getFileName() + ".next");
+        long start = System.currentTimeMillis();
+
+        Directories.deleteRecursively(next);
+        Files.createDirectories(next);
+
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(next.toString());
+        DataLoader loader = LoaderFactory.parallelLoader(dsg, (fmt, args) -> System.out.println(String.format(fmt, args)));
+
+        loader.startBulk();
+        try {
+            for (Path f : files) loader.load(f.toString());
+            loader.finishBulk();
+        } catch (RuntimeException e) {
+            loader.finishException(e);
+            throw e;
+        } finally {
+            // releases the files so the directory can be moved.
+            TDBInternal.expel(dsg);
+        }
+
+        Directories.swap(next, dir);
+
+        System.out.println("TDB2 dataset " + dir + " : " + loader.countTriples() + " triples bulk loaded in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+}
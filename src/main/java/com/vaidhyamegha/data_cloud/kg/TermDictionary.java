@@ -0,0 +1,42 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Int ids of the RDF terms (IRIs, literals) of a BUILD, shared by all stages, so a triple is three ints. Each
+ * distinct term is held once : heap grows with the number of entities and labels, not with the number of links
+ * between them. Ids are given in order of first use.
+ */
+class TermDictionary {
+    private final Map<Node, Integer> ids = new ConcurrentHashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+
+    int id(Node n) {
+        Integer id = ids.get(n);
+
+        if (id != null) return id;
+
+        synchronized (nodes) {
+            return ids.computeIfAbsent(n, k -> {
+                nodes.add(k);
+                return nodes.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * Only once every stage adding terms is done.
+     */
+    Node node(int id) {
+        return nodes.get(id);
+    }
+
+    int size() {
+        return nodes.size();
+    }
+}
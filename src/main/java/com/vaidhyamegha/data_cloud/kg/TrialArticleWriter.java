@@ -0,0 +1,64 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers trial to PubMed article links and upserts them into trial_article as JDBC batches of 'batchSize' rows,
+ * on one pooled connection per batch. Safe to call from concurrent Entrez callbacks.
+ */
+class TrialArticleWriter implements Closeable {
+    private final ConnectionPool pool;
+    private final String upsert;
+    private final int batchSize;
+    // keyed by trial : one statement can't upsert the same row twice, the latest result wins.
+    private final Map<String, List<Integer>> pending = new LinkedHashMap<>();
+    private long written = 0;
+
+    TrialArticleWriter(ConnectionPool pool, String upsert, int batchSize) {
+        this.pool = pool;
+        this.upsert = upsert;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    synchronized void add(String trialId, List<Integer> articles) {
+        pending.put(trialId, articles);
+
+        if (pending.size() >= batchSize) flush();
+    }
+
+    synchronized void flush() {
+        if (pending.isEmpty()) return;
+
+        try (Connection c = pool.getConnection();
+             PreparedStatement stmt = c.prepareStatement(upsert)) {
+
+            for (Map.Entry<String, List<Integer>> e : pending.entrySet()) {
+                stmt.setString(1, e.getKey());
+                stmt.setArray(2, c.createArrayOf("integer", e.getValue().toArray()));
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+            written += pending.size();
+            pending.clear();
+        } catch (SQLException e) {
+            System.err.format("SQL State: %s\n%s", e.getSQLState(), e.getMessage());
+            throw new RuntimeException("Sorry, couldn't write to trials-articles database table");
+        }
+    }
+
+    synchronized long getWritten() {
+        return written;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,227 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.OUTPUT_BUFFER_BYTES;
+
+/**
+ * External sort of dictionary encoded triples, for BUILDs whose graph doesn't fit in heap.
+ *
+ * A triple is two longs, (subject << 32 | predicate, object), of TermDictionary ids. They are buffered up to
+ * 'memoryBytes', then sorted, de-duplicated and spilled to disk as a run of fixed width records. Runs of every
+ * sorter are then k-way merged, dropping triples seen in more than one run, and decoded to the output. So a
+ * MeSH label statement found for thousands of trials costs 16 bytes per find, and is written once.
+ */
+class TripleSorter implements Closeable {
+    private static final int INITIAL_TRIPLES = 1 << 16;
+    private static final int INSERTION_SORT = 16;
+
+    private final Path dir;
+    private final String name;
+    private final TermDictionary dictionary;
+    private final int maxTriples;
+    private final List<Path> runs = new ArrayList<>();
+
+    private long[] buffer = new long[2 * INITIAL_TRIPLES];
+    private int n = 0;
+    private long added = 0;
+    private long spilled = 0;
+
+    TripleSorter(Path dir, String name, TermDictionary dictionary, long memoryBytes) {
+        this.dir = dir;
+        this.name = name;
+        this.dictionary = dictionary;
+        this.maxTriples = (int) Math.max(INITIAL_TRIPLES, Math.min(Integer.MAX_VALUE / 2 - 8, memoryBytes / 16));
+    }
+
+    void add(Triple t) {
+        if (n == buffer.length / 2) {
+            if (n < maxTriples) buffer = Arrays.copyOf(buffer, 2 * Math.min(maxTriples, 2 * n));
+            else spill();
+        }
+
+        buffer[2 * n] = (long) dictionary.id(t.getSubject()) << 32 | dictionary.id(t.getPredicate());
+        buffer[2 * n + 1] = dictionary.id(t.getObject());
+        n++;
+        added++;
+    }
+
+    /**
+     * Spills what is still buffered; the sorter is only merged after.
+     */
+    void seal() {
+        if (n > 0) spill();
+        buffer = null;
+    }
+
+    long added() {
+        return added;
+    }
+
+    /**
+     * Distinct triples written to runs, i.e. after de-duplication within each run.
+     */
+    long spilled() {
+        return spilled;
+    }
+
+    int runs() {
+        return runs.size();
+    }
+
+    private void spill() {
+        sort(buffer, 0, n);
+
+        try {
+            Path run = Files.createTempFile(dir, name + "-run", ".bin");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), OUTPUT_BUFFER_BYTES))) {
+                for (int i = 0; i < n; i++) {
+                    long hi = buffer[2 * i], lo = buffer[2 * i + 1];
+
+                    if (i > 0 && hi == buffer[2 * i - 2] && lo == buffer[2 * i - 1]) continue;
+
+                    out.writeLong(hi);
+                    out.writeLong(lo);
+                    spilled++;
+                }
+            }
+
+            runs.add(run);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sorry, couldn't spill sorted triples of " + name, e);
+        }
+
+        n = 0;
+    }
+
+    /**
+     * K-way merge of the runs of all 'sorters', each distinct triple decoded and written to 'out' once, in (subject,
+     * predicate, object) id order.
+     *
+     * @return the number of triples written.
+     */
+    static long mergeUnique(List<TripleSorter> sorters, TermDictionary dictionary, StreamRDF out) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>();
+        List<Cursor> cursors = new ArrayList<>();
+        long written = 0;
+
+        try {
+            for (TripleSorter s : sorters)
+                for (Path run : s.runs) {
+                    Cursor c = new Cursor(run);
+                    cursors.add(c);
+
+                    if (c.advance()) queue.add(c);
+                }
+
+            long lastHi = -1, lastLo = -1;
+
+            while (!queue.isEmpty()) {
+                Cursor c = queue.poll();
+
+                if (c.hi != lastHi || c.lo != lastLo) {
+                    out.triple(Triple.create(dictionary.node((int) (c.hi >>> 32)), dictionary.node((int) c.hi),
+                            dictionary.node((int) c.lo)));
+                    lastHi = c.hi;
+                    lastLo = c.lo;
+                    written++;
+                }
+
+                if (c.advance()) queue.add(c);
+            }
+        } finally {
+            for (Cursor c : cursors) c.in.close();
+        }
+
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) Files.deleteIfExists(run);
+        runs.clear();
+        buffer = null;
+    }
+
+    private static class Cursor implements Comparable<Cursor> {
+        private final DataInputStream in;
+        private long hi, lo;
+
+        Cursor(Path run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                hi = in.readLong();
+                lo = in.readLong();
+
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            return compare(hi, lo, o.hi, o.lo);
+        }
+    }
+
+    private static int compare(long hi1, long lo1, long hi2, long lo2) {
+        int c = Long.compare(hi1, hi2);
+
+        return c != 0 ? c : Long.compare(lo1, lo2);
+    }
+
+    /**
+     * In place sort of the (hi, lo) pairs [from, to) : quicksort with three way partitioning, as runs hold many
+     * duplicates, recursing into the smaller side only.
+     */
+    static void sort(long[] a, int from, int to) {
+        while (to - from > INSERTION_SORT) {
+            int m = from + (to - from) / 2;
+            long pHi = a[2 * m], pLo = a[2 * m + 1];
+            int lt = from, i = from, gt = to - 1;
+
+            while (i <= gt) {
+                int c = compare(a[2 * i], a[2 * i + 1], pHi, pLo);
+
+                if (c < 0) swap(a, lt++, i++);
+                else if (c > 0) swap(a, i, gt--);
+                else i++;
+            }
+
+            if (lt - from < to - gt - 1) {
+                sort(a, from, lt);
+                from = gt + 1;
+            } else {
+                sort(a, gt + 1, to);
+                to = lt;
+            }
+        }
+
+        for (int i = from + 1; i < to; i++)
+            for (int j = i; j > from && compare(a[2 * j - 2], a[2 * j - 1], a[2 * j], a[2 * j + 1]) > 0; j--)
+                swap(a, j, j - 1);
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long hi = a[2 * i], lo = a[2 * i + 1];
+
+        a[2 * i] = a[2 * j];
+        a[2 * i + 1] = a[2 * j + 1];
+        a[2 * j] = hi;
+        a[2 * j + 1] = lo;
+    }
+}
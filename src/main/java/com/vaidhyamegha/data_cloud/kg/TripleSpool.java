@@ -0,0 +1,136 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.vaidhyamegha.data_cloud.kg.Constants.OUTPUT_BUFFER_BYTES;
+
+/**
+ * Per-stage triple buffer. Each stage owns one, so stages never contend on a shared sink.
+ * In memory it is a plain graph; on disk it is an N-Triples file which is copied byte for byte into the output.
+ * Out of core, it is a TripleSorter's sorted runs of encoded triples.
+ */
+class TripleSpool implements Closeable {
+    private final Graph graph;
+    private final Path file;
+    private final TripleSorter sorter;
+    private final TermDictionary dictionary;
+    private OutputStream os;
+    private long triples = 0;
+
+    private TripleSpool(Graph graph, Path file, TripleSorter sorter, TermDictionary dictionary) {
+        this.graph = graph;
+        this.file = file;
+        this.sorter = sorter;
+        this.dictionary = dictionary;
+    }
+
+    static TripleSpool inMemory(Graph graph) {
+        return new TripleSpool(graph, null, null, null);
+    }
+
+    static TripleSpool onDisk(Path dir, String name) {
+        return new TripleSpool(null, dir.resolve(name + ".nt"), null, null);
+    }
+
+    static TripleSpool outOfCore(Path dir, String name, TermDictionary dictionary, long memoryBytes) {
+        return new TripleSpool(null, null, new TripleSorter(dir, name, dictionary, memoryBytes), dictionary);
+    }
+
+    StreamRDF sink() throws IOException {
+        StreamRDF target;
+
+        if (graph != null) {
+            target = StreamRDFLib.graph(graph);
+        } else if (sorter != null) {
+            target = new StreamRDFBase() {
+                @Override
+                public void triple(Triple t) {
+                    sorter.add(t);
+                }
+            };
+        } else {
+            os = new BufferedOutputStream(Files.newOutputStream(file), OUTPUT_BUFFER_BYTES);
+            target = StreamRDFWriter.getWriterStream(os, Lang.NT);
+        }
+
+        return new StreamRDFWrapper(target) {
+            @Override
+            public void triple(Triple t) {
+                triples++;
+                super.triple(t);
+            }
+        };
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Null unless out of core.
+     */
+    TripleSorter sorter() {
+        return sorter;
+    }
+
+    long size() {
+        return triples;
+    }
+
+    /**
+     * Called by the stage's thread once it has finished and its sink has been finished.
+     */
+    void seal() throws IOException {
+        if (os != null) os.close();
+        if (sorter != null) sorter.seal();
+    }
+
+    void mergeInto(StreamRDF out) {
+        if (graph != null) graph.find().forEachRemaining(out::triple);
+        else if (sorter != null) try {
+            TripleSorter.mergeUnique(List.of(sorter), dictionary, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        else RDFParser.source(file).lang(Lang.NT).parse(new StreamRDFWrapper(out) {
+            @Override
+            public void start() { }
+
+            @Override
+            public void finish() { }
+        });
+    }
+
+    void copyTo(OutputStream out) throws IOException {
+        if (graph != null) RDFDataMgr.write(out, graph, Lang.NT);
+        else if (sorter != null) {
+            StreamRDF writer = StreamRDFWriter.getWriterStream(out, Lang.NT);
+
+            writer.start();
+            TripleSorter.mergeUnique(List.of(sorter), dictionary, writer);
+            writer.finish();
+        }
+        else Files.copy(file, out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (graph != null) graph.clear();
+        if (file != null) Files.deleteIfExists(file);
+        if (sorter != null) sorter.close();
+    }
+}
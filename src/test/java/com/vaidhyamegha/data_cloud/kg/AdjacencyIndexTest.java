@@ -0,0 +1,55 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class AdjacencyIndexTest extends TestCase {
+
+    private static final String E = "<" + Constants.NAMED_EDGE;
+
+    public void testLookupsBothWaysAfterReload() throws Exception {
+        Path nt = Files.createTempFile("kg", ".nt");
+        Path adj = Files.createTempFile("kg", ".adj");
+        nt.toFile().deleteOnExit();
+        adj.toFile().deleteOnExit();
+
+        Files.writeString(nt, String.join("\n",
+                "<https://clinicaltrials.gov/ct2/show/NCT01874691> " + E + "Pubmed_Article> <https://pubmed.ncbi.nlm.nih.gov/25153486> .",
+                "<https://clinicaltrials.gov/ct2/show/NCT01874691> " + E + "Pubmed_Article> <https://pubmed.ncbi.nlm.nih.gov/25153486> .",
+                "<https://www.who.int/clinical-trials-registry-platform/CTRI/2020/08/027368> " + E + "Condition> <http://id.nlm.nih.gov/mesh/2022/D001249> .",
+                "<https://clinicaltrials.gov/ct2/show/NCT01874691> " + E + "Condition> <http://id.nlm.nih.gov/mesh/2022/D001249> .",
+                "<https://pubmed.ncbi.nlm.nih.gov/25153486> " + E + "MeSH_DUI> <https://meshb.nlm.nih.gov/record/ui?ui=D001249> .",
+                "<https://www.ncbi.nlm.nih.gov/gene/1234> " + E + "Gene> <http://id.nlm.nih.gov/mesh/2022/D001249> .",
+                "<https://clinicaltrials.gov/ct2/show/NCT01874691> <http://www.w3.org/2000/01/rdf-schema#label> \"NCT01874691\" .",
+                ""));
+
+        AdjacencyIndex.build(nt).write(adj);
+        AdjacencyIndex index = AdjacencyIndex.read(adj);
+
+        assertEquals(2, index.size(AdjacencyIndex.Kind.TRIAL));
+        assertEquals(1, index.edges(AdjacencyIndex.Relation.PUBMED_ARTICLE));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+
+        assertEquals(4, index.lookup(AdjacencyIndex.Kind.MESH, "D001249", out));
+        assertEquals(String.join("\n",
+                "D001249\t^Condition\tCTRI/2020/08/027368",
+                "D001249\t^Condition\tNCT01874691",
+                "D001249\t^MeSH_DUI\t25153486",
+                "D001249\t^Gene\t1234", ""), bytes.toString());
+
+        assertEquals(-1, index.lookup(AdjacencyIndex.Kind.TRIAL, "NCT00000000", out));
+    }
+
+    public void testMeSHIdsOfAnyRelease() {
+        assertEquals("D001249", AdjacencyIndex.Kind.MESH.idOf("http://id.nlm.nih.gov/mesh/2022/D001249"));
+        assertEquals("D001249", AdjacencyIndex.Kind.MESH.idOf("http://id.nlm.nih.gov/mesh/2023/D001249"));
+        assertEquals("D001249", AdjacencyIndex.Kind.MESH.idOf("https://meshb.nlm.nih.gov/record/ui?ui=D001249"));
+        assertNull(AdjacencyIndex.Kind.MESH.idOf("http://id.nlm.nih.gov/mesh/vocab#TopicalDescriptor"));
+    }
+}
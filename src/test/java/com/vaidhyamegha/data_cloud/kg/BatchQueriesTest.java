@@ -0,0 +1,53 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class BatchQueriesTest extends TestCase {
+
+    public void testQueriesRunConcurrentlyIntoTheirOwnFiles() throws Exception {
+        Model m = ModelFactory.createDefaultModel();
+        for (int i = 1; i <= 3; i++)
+            m.createResource(RESOURCE.TRIAL.uri("NCT0000000" + i))
+                    .addProperty(m.createProperty(Constants.NAMED_EDGE + "Pubmed_Article"),
+                            m.createResource(RESOURCE.PUBMED_ARTICLE.uri(String.valueOf(i))));
+
+        Path dir = Files.createTempDirectory("batch");
+        Path queries = Files.createDirectory(dir.resolve("queries"));
+        Path results = dir.resolve("results");
+
+        Files.writeString(queries.resolve("articles.rq"), "SELECT ?t ?a WHERE { ?t <" + Constants.NAMED_EDGE + "Pubmed_Article> ?a }");
+        Files.writeString(queries.resolve("any.rq"), "ASK { ?s ?p ?o }");
+        Files.writeString(queries.resolve("graph.rq"), "CONSTRUCT { ?a ?p ?t } WHERE { ?t ?p ?a }");
+        Files.writeString(queries.resolve("broken.rq"), "SELECT WHERE {");
+        Files.writeString(queries.resolve("notes.txt"), "not a query");
+
+        List<BatchQueries.Result> r = new BatchQueries(DatasetFactory.wrap(m), results, BatchQueries.Format.CSV, 4, 10_000)
+                .run(BatchQueries.queries(queries));
+
+        assertEquals(List.of("any", "articles", "broken", "graph"), r.stream().map(x -> x.name).toList());
+        assertNull(r.get(1).error);
+        assertEquals(3, r.get(1).rows);
+        assertEquals(4, Files.readAllLines(results.resolve("articles.csv")).size());
+        assertEquals("true", Files.readAllLines(results.resolve("any.csv")).get(1).trim());
+        assertEquals(3, Files.readAllLines(results.resolve("graph.nt")).size());
+
+        assertNotNull(r.get(2).error);
+        assertFalse(Files.exists(results.resolve("broken.csv")));
+        assertEquals(5, Files.readAllLines(results.resolve("summary.tsv")).size());
+    }
+
+    public void testQueryListResolvesAgainstItsDirectory() throws Exception {
+        Path dir = Files.createTempDirectory("batch");
+        Path list = dir.resolve("nightly.txt");
+        Files.writeString(list, "# nightly reports\nreports/a.rq\n\n/tmp/b.rq\n");
+
+        assertEquals(List.of(dir.resolve("reports/a.rq"), Path.of("/tmp/b.rq")), BatchQueries.queries(list));
+    }
+}
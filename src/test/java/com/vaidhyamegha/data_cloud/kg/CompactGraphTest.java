@@ -0,0 +1,102 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.graph.GraphFactory;
+
+import java.util.*;
+
+public class CompactGraphTest extends TestCase {
+    private static final Node ANY = Node.ANY;
+
+    public void testEveryPatternMatchesTheDefaultGraph() {
+        Graph compact = new CompactGraph(), reference = GraphFactory.createDefaultGraph();
+        Node condition = NodeFactory.createURI(Constants.NAMED_EDGE + "Condition");
+        Node label = NodeFactory.createURI("http://www.w3.org/2000/01/rdf-schema#label");
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            Node trial = RESOURCE.TRIAL.createNode("NCT" + random.nextInt(2000));
+            Node mesh = RESOURCE.MESH_DUI.createNode("D" + random.nextInt(50));
+            Triple t = i % 3 == 0 ? Triple.create(mesh, label, NodeFactory.createLiteral("label " + mesh.getURI().length(), "en"))
+                    : Triple.create(trial, condition, mesh);
+
+            compact.add(t);
+            reference.add(t);
+        }
+
+        // added twice, counted once.
+        assertEquals(reference.size(), compact.size());
+
+        List<Triple> sample = reference.find().toList().subList(0, 50);
+        for (Triple t : sample)
+            for (int mask = 0; mask < 8; mask++) {
+                Triple pattern = Triple.create((mask & 4) != 0 ? t.getSubject() : ANY,
+                        (mask & 2) != 0 ? t.getPredicate() : ANY, (mask & 1) != 0 ? t.getObject() : ANY);
+
+                assertEquals(pattern.toString(), new HashSet<>(reference.find(pattern).toList()),
+                        new HashSet<>(compact.find(pattern).toList()));
+            }
+    }
+
+    public void testTermsKeepTheirKind() {
+        Graph g = new CompactGraph();
+        Node s = NodeFactory.createURI("http://example.org/a#x"), p = NodeFactory.createURI("http://example.org/p");
+        List<Node> objects = List.of(NodeFactory.createLiteral("x"), NodeFactory.createLiteral("x", "en"),
+                NodeFactory.createLiteral("1", XSDDatatype.XSDinteger), NodeFactory.createBlankNode("b0"),
+                NodeFactory.createURI("urn:x"), NodeFactory.createURI("http://example.org/a#x"));
+
+        for (Node o : objects) g.add(Triple.create(s, p, o));
+
+        assertEquals(objects.size(), g.size());
+        for (Node o : objects) assertTrue(o.toString(), g.contains(s, p, o));
+
+        assertFalse(g.contains(s, p, NodeFactory.createLiteral("x", "fr")));
+        assertFalse(g.contains(NodeFactory.createURI("http://unknown.org/y"), ANY, ANY));
+    }
+
+    public void testAddsAfterAFindAreMergedIn() {
+        Graph g = new CompactGraph();
+        Node p = NodeFactory.createURI(Constants.NAMED_EDGE + "Intervention");
+
+        assertEquals(0, g.size());
+        assertFalse(g.find().hasNext());
+
+        g.add(Triple.create(RESOURCE.TRIAL.createNode("NCT1"), p, RESOURCE.MESH_DUI.createNode("D1")));
+        assertEquals(1, g.size());
+
+        g.add(Triple.create(RESOURCE.TRIAL.createNode("NCT2"), p, RESOURCE.MESH_DUI.createNode("D1")));
+        g.add(Triple.create(RESOURCE.TRIAL.createNode("NCT1"), p, RESOURCE.MESH_DUI.createNode("D1")));
+        assertEquals(2, g.size());
+        assertEquals(2, g.find(ANY, ANY, RESOURCE.MESH_DUI.createNode("D1")).toList().size());
+
+        g.clear();
+        assertEquals(0, g.size());
+    }
+
+    public void testSparqlOverAModel() {
+        Model m = ModelFactory.createModelForGraph(new CompactGraph());
+        Node p = NodeFactory.createURI(Constants.NAMED_EDGE + "Condition");
+
+        for (int i = 0; i < 10; i++)
+            m.getGraph().add(Triple.create(RESOURCE.TRIAL.createNode("NCT" + i), p,
+                    RESOURCE.MESH_DUI.createNode("D" + i % 3)));
+
+        String q = "SELECT (COUNT(?t) AS ?n) WHERE { ?t <" + p.getURI() + "> <" + RESOURCE.MESH_DUI.createNode("D0").getURI() + "> }";
+
+        try (QueryExecution qexec = QueryExecutionFactory.create(q, m)) {
+            ResultSet rs = qexec.execSelect();
+
+            assertEquals(4, rs.next().getLiteral("n").getInt());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+public class EntityDocumentsTest extends TestCase {
+
+    private static final String E = "<" + Constants.NAMED_EDGE;
+
+    private static JsonNode json(ByteBuffer doc) throws Exception {
+        byte[] b = new byte[doc.remaining()];
+        doc.get(b);
+
+        return new ObjectMapper().readTree(new String(b, StandardCharsets.UTF_8));
+    }
+
+    public void testDocumentsHoldStatementsAndReverseLinks() throws Exception {
+        Path dir = Files.createTempDirectory("entities");
+        Path nt = dir.resolve("kg.nt");
+        Path documents = dir.resolve("kg.jsonld");
+
+        Files.writeString(nt, String.join("\n",
+                "<https://clinicaltrials.gov/ct2/show/NCT01874691> " + E + "Pubmed_Article> <https://pubmed.ncbi.nlm.nih.gov/25153486> .",
+                "<https://clinicaltrials.gov/ct2/show/NCT01874691> " + E + "Pubmed_Article> <https://pubmed.ncbi.nlm.nih.gov/25153487> .",
+                "<https://clinicaltrials.gov/ct2/show/NCT01874691> " + E + "Condition> <http://id.nlm.nih.gov/mesh/2022/D001249> .",
+                "<https://clinicaltrials.gov/ct2/show/NCT01874691> <http://www.w3.org/2000/01/rdf-schema#label> \"NCT01874691\" .",
+                "<https://www.who.int/clinical-trials-registry-platform/CTRI/2020/08/027368> " + E + "Condition> <http://id.nlm.nih.gov/mesh/2022/D001249> .",
+                "<http://id.nlm.nih.gov/mesh/2022/D001249> <http://www.w3.org/2000/01/rdf-schema#label> \"Asthma\"@en .",
+                "<https://pubmed.ncbi.nlm.nih.gov/25153486> " + E + "MeSH_DUI> <https://meshb.nlm.nih.gov/record/ui?ui=D001249> .",
+                ""));
+
+        assertEquals(5, EntityDocuments.build(documents, 1 << 20, nt));
+
+        try (EntityDocuments docs = EntityDocuments.open(documents)) {
+            assertEquals(5, docs.size());
+
+            JsonNode trial = json(docs.get("trial/NCT01874691"));
+            assertEquals(EntityDocuments.CONTEXT_PATH, trial.get("@context").asText());
+            assertEquals("ct:NCT01874691", trial.get("@id").asText());
+            assertEquals("NCT01874691", trial.get("label").asText());
+            assertEquals("mesh:2022/D001249", trial.get("Condition").asText());
+            assertEquals(2, trial.get("Pubmed_Article").size());
+
+            JsonNode article = json(docs.get("article/25153486"));
+            assertEquals("ct:NCT01874691", article.get("@reverse").get("Pubmed_Article").asText());
+
+            // the MeSH descriptor and the MRCOC DUI record share an id, so one document with both nodes.
+            JsonNode mesh = json(docs.get("mesh/D001249"));
+            assertEquals(2, mesh.get("@graph").size());
+            assertEquals("dui:D001249", mesh.get("@graph").get(0).get("@id").asText());
+            JsonNode descriptor = mesh.get("@graph").get(1);
+            assertEquals("mesh:2022/D001249", descriptor.get("@id").asText());
+            assertEquals("Asthma", descriptor.get("label").get("@value").asText());
+            assertEquals(2, descriptor.get("@reverse").get("Condition").size());
+
+            assertNotNull(docs.get("trial/CTRI/2020/08/027368"));
+            assertNull(docs.get("trial/NCT00000000"));
+        }
+
+        // documents are JSON Lines too, after the build's stamp.
+        assertEquals(6, Files.readAllLines(documents).stream().filter(l -> !l.isEmpty()).count());
+    }
+
+    public void testIndexOfAnotherBuildIsRejected() throws Exception {
+        Path dir = Files.createTempDirectory("entities");
+        Path nt = dir.resolve("kg.nt");
+        Path documents = dir.resolve("kg.jsonld");
+        Path previous = dir.resolve("previous.idx");
+
+        Files.writeString(nt, "<https://clinicaltrials.gov/ct2/show/NCT01874691> " + E + "Pubmed_Article> <https://pubmed.ncbi.nlm.nih.gov/25153486> .\n");
+        EntityDocuments.build(documents, 1 << 20, nt);
+        Files.copy(EntityDocuments.indexOf(documents), previous);
+
+        // same triples, so documents of the same size : only the stamp tells the builds apart.
+        EntityDocuments.build(documents, 1 << 20, nt);
+        Files.copy(previous, EntityDocuments.indexOf(documents), StandardCopyOption.REPLACE_EXISTING);
+
+        try {
+            EntityDocuments.open(documents);
+            fail("an index of another build was opened");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("different builds"));
+        }
+    }
+}
@@ -1,22 +1,58 @@
 package com.vaidhyamegha.data_cloud.kg;
 
+import com.sun.net.httpserver.HttpServer;
 import junit.framework.TestCase;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
 public class EntrezClientTest extends TestCase {
 
+    private static final String CANNED = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+            "<eSearchResult><Count>2</Count><RetMax>2</RetMax><RetStart>0</RetStart>" +
+            "<IdList><Id>34064657</Id><Id>25153486</Id></IdList></eSearchResult>";
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger throttled = new AtomicInteger();
+
     @Before
     public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/esearch.fcgi", exchange -> {
+            requests.incrementAndGet();
+
+            if (throttled.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                byte[] body = CANNED.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/xml");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
     }
 
     @After
     public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    private EntrezClient stubClient() {
+        return new EntrezClient("http://localhost:" + server.getAddress().getPort(), null, 100, 4);
     }
 
     public void testTestGetPubMedIds() {
@@ -25,4 +61,57 @@ public class EntrezClientTest extends TestCase {
         System.out.println(Arrays.toString(r.getIdList().toArray()));
         assertEquals(r.getIdList().toArray().length, 12);
     }
+
+    public void testSearchAllAgainstStub() {
+        List<Map.Entry<String, ESearchResult>> results = stubClient()
+                .searchAll(List.of("NCT00000001", "NCT00000002", "NCT00000003", "NCT00000004", "NCT00000005"))
+                .collectList().block();
+
+        assertEquals(5, results.size());
+        assertEquals(5, requests.get());
+        for (Map.Entry<String, ESearchResult> e : results)
+            assertEquals(List.of(34064657, 25153486), EntrezClient.idsOf(e.getValue()));
+    }
+
+    public void testRetriesWhenThrottled() {
+        throttled.set(1);
+
+        ESearchResult r = stubClient().search("NCT00000001").block();
+
+        assertEquals(2, requests.get());
+        assertEquals(Integer.valueOf(2), r.getCount());
+    }
+
+    public void testCacheSurvivesReopen() throws Exception {
+        Path file = Files.createTempFile("entrez", ".tsv");
+        file.toFile().deleteOnExit();
+
+        try (EntrezCache cache = EntrezCache.open(file)) {
+            cache.put("NCT00000001", List.of(1, 2));
+            cache.put("CTRI/2021/05/033487", List.of());
+        }
+
+        try (EntrezCache cache = EntrezCache.open(file)) {
+            assertEquals(2, cache.size());
+            assertTrue(cache.attempted("CTRI/2021/05/033487"));
+            assertEquals(List.of(1, 2), cache.get("NCT00000001"));
+            assertFalse(cache.attempted("NCT00000002"));
+        }
+    }
+
+    public void testRateLimiterPacesReservations() {
+        long[] now = {0};
+        RateLimiter limiter = new RateLimiter(10, 1, () -> now[0]);
+
+        for (int i = 0; i < 5; i++) assertEquals(100L * i, limiter.reserve().toMillis());
+
+        // 250ms in, the sixth token is only free at 500ms.
+        now[0] = 250_000_000L;
+        assertEquals(250L, limiter.reserve().toMillis());
+
+        // an idle bucket doesn't bank more than 'burst' tokens.
+        now[0] = 10_000_000_000L;
+        assertEquals(0L, limiter.reserve().toMillis());
+        assertEquals(100L, limiter.reserve().toMillis());
+    }
 }
@@ -0,0 +1,51 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class IncrementalBuildTest extends TestCase {
+
+    private static String coOccurrence(int article, String dui) {
+        return "<" + RESOURCE.PUBMED_ARTICLE.uri(String.valueOf(article)) + "> <" + Constants.NAMED_EDGE + "MeSH_DUI> <"
+                + RESOURCE.MESH_DUI.uri(dui) + "> .";
+    }
+
+    private static Set<String> run(Path checkpoint, Map<String, String> articles, String mrcoc, List<String> emitted)
+            throws Exception {
+        IncrementalBuild build = new IncrementalBuild(checkpoint, null, 1 << 20);
+        Set<String> changed = build.changedKeys("co_occurrences", articles, mrcoc, RESOURCE.PUBMED_ARTICLE::uri, "articles");
+        Path spool = Files.createTempFile(checkpoint, "co_occurrences", ".nt");
+
+        Files.write(spool, emitted);
+        build.commitStage("co_occurrences", spool);
+        build.finish(new ByteArrayOutputStream(), checkpoint.resolve("delta.rdfp"));
+
+        return changed;
+    }
+
+    public void testOnlyNewlyLinkedArticlesAreJoined() throws Exception {
+        Path checkpoint = Files.createTempDirectory("checkpoint");
+
+        assertNull(run(checkpoint, Map.of("1", "", "2", ""), "mrcoc-1",
+                List.of(coOccurrence(1, "D001249"), coOccurrence(2, "D003920"))));
+
+        // article 1 is no longer linked to a trial, 3 is newly linked.
+        assertEquals(Set.of("1", "3"), run(checkpoint, Map.of("2", "", "3", ""), "mrcoc-1",
+                List.of(coOccurrence(3, "D006973"))));
+
+        assertEquals(List.of(coOccurrence(2, "D003920"), coOccurrence(3, "D006973")),
+                Files.readAllLines(checkpoint.resolve("co_occurrences.nt")));
+        assertEquals(List.of("TX .", "D " + coOccurrence(1, "D001249"), "A " + coOccurrence(3, "D006973"), "TC ."),
+                Files.readAllLines(checkpoint.resolve("delta.rdfp")));
+
+        // another MRCOC release, the stage is built in full.
+        assertNull(run(checkpoint, Map.of("2", "", "3", ""), "mrcoc-2",
+                List.of(coOccurrence(2, "D003920"), coOccurrence(3, "D006973"))));
+    }
+}
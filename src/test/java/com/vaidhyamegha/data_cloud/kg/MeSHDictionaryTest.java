@@ -0,0 +1,56 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MeSHDictionaryTest extends TestCase {
+
+    private MeSHDictionary build(boolean caseFold) throws Exception {
+        MeSHDictionary.Builder builder = new MeSHDictionary.Builder();
+
+        builder.add("Asthma", "http://id.nlm.nih.gov/mesh/2022/T003756", "http://id.nlm.nih.gov/mesh/vocab#prefLabel");
+        builder.add("Asthma", "http://id.nlm.nih.gov/mesh/2022/D001249", "http://www.w3.org/2000/01/rdf-schema#label");
+        builder.add("Asthma", "http://id.nlm.nih.gov/mesh/2022/D999999", "http://www.w3.org/2000/01/rdf-schema#label");
+        builder.add("Fever", "http://id.nlm.nih.gov/mesh/2022/T016080", "http://id.nlm.nih.gov/mesh/vocab#prefLabel");
+
+        Path p = Files.createTempFile("mesh", ".dict");
+        p.toFile().deleteOnExit();
+        builder.write(p, caseFold);
+
+        return MeSHDictionary.open(p);
+    }
+
+    public void testDescriptorWinsAndFirstSeenOtherwise() throws Exception {
+        MeSHDictionary d = build(false);
+
+        assertEquals(2, d.size());
+        assertEquals("http://id.nlm.nih.gov/mesh/2022/D001249", d.find("Asthma").subject);
+        assertEquals("http://id.nlm.nih.gov/mesh/2022/T016080", d.find("Fever").subject);
+        assertNull(d.find("asthma"));
+        assertNull(d.lookup("asthma", "asthma"));
+    }
+
+    public void testDescriptorOfAnotherReleaseWins() throws Exception {
+        MeSHDictionary.Builder builder = new MeSHDictionary.Builder();
+
+        builder.add("Asthma", "http://id.nlm.nih.gov/mesh/2023/T003756", "http://id.nlm.nih.gov/mesh/vocab#prefLabel");
+        builder.add("Asthma", "http://id.nlm.nih.gov/mesh/2023/D001249", "http://www.w3.org/2000/01/rdf-schema#label");
+
+        Path p = Files.createTempFile("mesh", ".dict");
+        p.toFile().deleteOnExit();
+        builder.write(p, false);
+
+        assertEquals("http://id.nlm.nih.gov/mesh/2023/D001249", MeSHDictionary.open(p).find("Asthma").subject);
+    }
+
+    public void testCaseFoldedLookup() throws Exception {
+        MeSHDictionary d = build(true);
+
+        assertTrue(d.isCaseFolded());
+        assertEquals("Asthma", d.lookup("ASTHMA", "asthma").label);
+        assertEquals("http://id.nlm.nih.gov/mesh/2022/T016080", d.lookup("fever", null).subject);
+        assertNull(d.lookup("Cough", "cough"));
+    }
+}
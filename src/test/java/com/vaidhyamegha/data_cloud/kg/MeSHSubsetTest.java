@@ -0,0 +1,61 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+public class MeSHSubsetTest extends TestCase {
+    private static final String MESH = "http://id.nlm.nih.gov/mesh/2022/";
+    private static final String TREE_NUMBER = "http://id.nlm.nih.gov/mesh/vocab#treeNumber";
+    private static final String PARENT = "http://id.nlm.nih.gov/mesh/vocab#parentTreeNumber";
+    private static final String LABEL = "http://www.w3.org/2000/01/rdf-schema#label";
+
+    private static String iri(String s, String p, String o) {
+        return "<" + MESH + s + "> <" + p + "> <" + MESH + o + "> .";
+    }
+
+    private static String literal(String s, String label) {
+        return "<" + MESH + s + "> <" + LABEL + "> \"" + label + "\"@en .";
+    }
+
+    private static final List<String> LINES = List.of(
+            literal("D001249", "Asthma"),
+            iri("D001249", TREE_NUMBER, "C08.127.108"),
+            literal("C08.127.108", "C08.127.108"),
+            iri("C08.127.108", PARENT, "C08.127"),
+            literal("D005334", "Fever"),
+            iri("D005334", TREE_NUMBER, "C23.888.119.344"),
+            literal("C08.127", "C08.127"),
+            iri("C08.127", PARENT, "C08"),
+            literal("C08", "C08"));
+
+    public void testKeepsSeedsAndTheirClosureInFileOrder() throws Exception {
+        Path mesh = Files.createTempFile("mesh", ".nt");
+        Path subset = mesh.resolveSibling(mesh.getFileName() + ".subset");
+        Files.write(mesh, LINES);
+
+        // small chunks, so lines are spread over several chunks and threads.
+        MeSHSubset.Stats stats = new MeSHSubset(mesh, List.of(TREE_NUMBER, PARENT), 3, 50)
+                .extract(Set.of(MESH + "D001249"), subset);
+
+        assertEquals(List.of(LINES.get(0), LINES.get(1), LINES.get(2), LINES.get(3), LINES.get(6), LINES.get(7),
+                LINES.get(8)), Files.readAllLines(subset));
+        assertEquals(1, stats.seeds);
+        assertEquals(4, stats.subjects);
+        assertEquals(LINES.size(), stats.lines);
+        assertEquals(7, stats.triples);
+    }
+
+    public void testWithoutClosureKeepsOnlySeeds() throws Exception {
+        Path mesh = Files.createTempFile("mesh", ".nt");
+        Path subset = mesh.resolveSibling(mesh.getFileName() + ".subset");
+        Files.write(mesh, LINES);
+
+        new MeSHSubset(mesh, List.of(), 2).extract(Set.of(MESH + "D005334"), subset);
+
+        assertEquals(List.of(LINES.get(4), LINES.get(5)), Files.readAllLines(subset));
+    }
+}
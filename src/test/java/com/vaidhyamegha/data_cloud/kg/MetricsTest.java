@@ -0,0 +1,38 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+public class MetricsTest extends TestCase {
+
+    public void testHistogramQuantilesAreBucketUpperBounds() {
+        Metrics.Histogram h = new Metrics.Histogram();
+
+        for (long v = 1; v <= 100; v++) h.record(v);
+
+        assertEquals(100, h.count());
+        assertEquals(64, h.quantile(0.5));
+        assertEquals(100, h.quantile(0.99));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testWorkIsAttributedToTheStageOfTheThread() throws Exception {
+        Metrics m = new Metrics();
+
+        m.rows(5);
+        m.stage("trials", () -> {
+            m.scanned("trial_ids", 10, 3_000_000, 1_000_000);
+            m.rows(2);
+            m.triples(7);
+        });
+
+        Map<String, Object> trials = (Map<String, Object>) ((Map<String, Object>) m.report().get("stages")).get("trials");
+        Map<String, Object> counters = (Map<String, Object>) m.report().get("counters");
+
+        assertEquals(12L, trials.get("rows"));
+        assertEquals(7L, trials.get("triples"));
+        assertEquals(3L, trials.get("jdbc_fetch_ms"));
+        assertEquals(10L, counters.get("jdbc.trial_ids.rows"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class MrcocJoinTest extends TestCase {
+
+    private Path mrcoc(String lines) throws Exception {
+        Path p = Files.createTempFile("mrcoc", ".txt");
+        p.toFile().deleteOnExit();
+        Files.writeString(p, lines);
+
+        return p;
+    }
+
+    public void testJoinsDistinctDuisOfLinkedArticles() throws Exception {
+        Path p = mrcoc("7|D000001|C000000002\n7|D000001|D000003\n9|D000004|D000005\n12|D000006|D000001\n"
+                + "100|D000007|D000008\n13|D000009|D000001\nnot|a|line\n");
+        List<String> pairs = Collections.synchronizedList(new ArrayList<>());
+
+        MrcocJoin.Stats stats = new MrcocJoin(p, new int[]{7, 12, 13, 50}, 1)
+                .run(partition -> (article, dui) -> pairs.add(article + "|" + MrcocJoin.decodeDui(dui)));
+
+        Collections.sort(pairs);
+        assertEquals(List.of("12|D000001", "12|D000006", "13|D000001", "13|D000009", "7|C000000002", "7|D000001",
+                "7|D000003"), pairs);
+        assertEquals(7, stats.lines);
+        assertEquals(4, stats.matched);
+        assertEquals(1, stats.outOfOrder);
+        assertEquals(1, stats.malformed);
+        assertEquals(3, stats.articlesMatched);
+        assertEquals(1, stats.articlesUnmatched);
+    }
+}
@@ -0,0 +1,68 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.function.Consumer;
+
+public class ShardedOutputTest extends TestCase {
+
+    private static Consumer<StreamRDF> triples(int from, int to) {
+        Node p = NodeFactory.createURI(Constants.NAMED_EDGE + "Pubmed_Article");
+
+        return out -> {
+            for (int i = from; i < to; i++)
+                out.triple(Triple.create(RESOURCE.TRIAL.createNode("NCT" + i / 3), p,
+                        RESOURCE.PUBMED_ARTICLE.createNode(String.valueOf(i))));
+        };
+    }
+
+    public void testSubjectsStayInOneShardAndManifestMatchesFiles() throws Exception {
+        Path dir = Files.createTempDirectory("shards").resolve("out");
+        Map<String, Consumer<StreamRDF>> sources = new LinkedHashMap<>();
+        sources.put("a", triples(0, 600));
+        sources.put("b", triples(600, 1000));
+
+        List<ShardedOutput.Shard> shards = new ShardedOutput(dir, 4, true, ShardedOutput.Partition.SUBJECT, 100, 0)
+                .write(sources);
+
+        Map<String, String> shardOfSubject = new HashMap<>();
+        long total = 0;
+
+        for (ShardedOutput.Shard s : shards) {
+            Path f = dir.resolve(s.file);
+            assertTrue(s.file.endsWith(".nt.gz"));
+            assertTrue(s.triples <= 100);
+            assertEquals(Files.size(f), s.bytes);
+            assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(f))), s.sha256);
+
+            String shard = s.file.substring(0, s.file.lastIndexOf('-'));
+            long[] n = {0};
+            RDFParser.source(f).lang(Lang.NT).parse(new StreamRDFBase() {
+                @Override
+                public void triple(Triple t) {
+                    n[0]++;
+                    String previous = shardOfSubject.put(t.getSubject().getURI(), shard);
+                    assertTrue(previous == null || previous.equals(shard));
+                }
+            });
+
+            assertEquals(s.triples, n[0]);
+            total += n[0];
+        }
+
+        assertEquals(1000, total);
+        assertEquals(shards.size(), ShardedOutput.files(dir).size());
+        assertTrue(Files.readString(dir.resolve("SHA256SUMS")).contains(shards.get(0).sha256 + "  " + shards.get(0).file));
+    }
+}
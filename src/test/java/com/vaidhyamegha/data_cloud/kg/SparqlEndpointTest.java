@@ -0,0 +1,231 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.After;
+import org.junit.Before;
+import org.springframework.http.MediaType;
+import reactor.netty.DisposableServer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+public class SparqlEndpointTest extends TestCase {
+
+    private DisposableServer server;
+    private final QueryCache cache = new QueryCache(1 << 20);
+
+    @Before
+    public void setUp() {
+        Model m = ModelFactory.createDefaultModel();
+        m.createResource(RESOURCE.TRIAL.uri("NCT00000001"))
+                .addProperty(m.createProperty(Constants.NAMED_EDGE + "Pubmed_Article"),
+                        m.createResource(RESOURCE.PUBMED_ARTICLE.uri("34064657")));
+        m.createResource(RESOURCE.TRIAL.uri("NCT00000001"))
+                .addProperty(m.createProperty(Constants.RDF_SCHEMA_LABEL), "NCT00000001");
+
+        Dataset ds = DatasetFactory.wrap(m);
+        server = new SparqlEndpoint(Map.of("kg", ds), Map.of("kg", Path.of(".")), cache, null, 2, 100, 5000).start(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.disposeNow();
+    }
+
+    private HttpResponse<String> get(String query, String accept) throws Exception {
+        String url = "http://localhost:" + server.port() + "/sparql/kg?query=" + URLEncoder.encode(query, StandardCharsets.UTF_8);
+
+        return HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(url)).header("Accept", accept).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    public void testSelectAsJsonAndTsv() throws Exception {
+        String q = "select ?a where { <https://clinicaltrials.gov/ct2/show/NCT00000001> <"
+                + Constants.NAMED_EDGE + "Pubmed_Article> ?a }";
+
+        HttpResponse<String> json = get(q, "application/sparql-results+json");
+        assertEquals(200, json.statusCode());
+        assertTrue(json.body(), json.body().contains("\"value\":\"https://pubmed.ncbi.nlm.nih.gov/34064657\""));
+
+        HttpResponse<String> tsv = get(q, "text/tab-separated-values");
+        assertEquals("?a\n<https://pubmed.ncbi.nlm.nih.gov/34064657>\n", tsv.body());
+    }
+
+    public void testWildcardAcceptGetsJson() throws Exception {
+        String q = "select ?a where { <https://clinicaltrials.gov/ct2/show/NCT00000001> <"
+                + Constants.NAMED_EDGE + "Pubmed_Article> ?a }";
+
+        HttpResponse<String> any = get(q, "*/*");
+        assertEquals(200, any.statusCode());
+        assertEquals("application/sparql-results+json", any.headers().firstValue("Content-Type").orElse(""));
+        assertTrue(any.body(), any.body().startsWith("{\"head\""));
+    }
+
+    public void testNegotiateByQuality() {
+        assertEquals("application/sparql-results+json", SparqlEndpoint.negotiate(MediaType.parseMediaTypes(
+                "application/sparql-results+json, application/json;q=0.9, text/tab-separated-values;q=0.7, */*;q=0.1")).toString());
+        assertEquals("text/tab-separated-values", SparqlEndpoint.negotiate(MediaType.parseMediaTypes(
+                "application/sparql-results+json;q=0.5, text/tab-separated-values")).toString());
+        assertEquals("text/tab-separated-values", SparqlEndpoint.negotiate(MediaType.parseMediaTypes("text/*")).toString());
+        assertEquals("application/sparql-results+json", SparqlEndpoint.negotiate(MediaType.parseMediaTypes("")).toString());
+    }
+
+    public void testRepeatedQueryIsServedFromCache() throws Exception {
+        String q = "select ?l where { ?t <" + Constants.RDF_SCHEMA_LABEL + "> ?l }";
+        String same = "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\nSELECT ?l WHERE {\n  ?t rdfs:label ?l .\n}";
+
+        String first = get(q, "text/tab-separated-values").body();
+        String second = get(same, "text/tab-separated-values").body();
+
+        assertEquals("?l\n\"NCT00000001\"\n", first);
+        assertEquals(first, second);
+        assertEquals(1L, cache.metrics().get("hits"));
+        assertEquals(1L, cache.metrics().get("misses"));
+    }
+
+    public void testRepeatedAskIsServedFromCache() throws Exception {
+        String q = "ask { <https://clinicaltrials.gov/ct2/show/NCT00000001> <" + Constants.NAMED_EDGE + "Pubmed_Article> ?a }";
+
+        String first = get(q, "text/tab-separated-values").body();
+        String second = get(q, "text/tab-separated-values").body();
+
+        assertEquals("?_askResult\ntrue\n", first);
+        assertEquals(first, second);
+        assertEquals(1L, cache.metrics().get("hits"));
+        assertEquals(1L, cache.metrics().get("misses"));
+    }
+
+    public void testCancelledQueryGivesBackItsSlot() throws Exception {
+        Model m = ModelFactory.createDefaultModel();
+        // more rows than the socket buffers hold, so the query is still running when the client leaves.
+        for (int i = 0; i < 500_000; i++)
+            m.createResource(RESOURCE.TRIAL.uri("NCT" + i)).addProperty(m.createProperty(Constants.RDF_SCHEMA_LABEL), "NCT" + i);
+
+        SparqlEndpoint endpoint = new SparqlEndpoint(Map.of("kg", DatasetFactory.wrap(m)), Map.of("kg", Path.of(".")),
+                null, null, 2, 100, 60_000);
+        DisposableServer big = endpoint.start(0);
+
+        try {
+            String q = URLEncoder.encode("select ?t ?l where { ?t <" + Constants.RDF_SCHEMA_LABEL + "> ?l }", StandardCharsets.UTF_8);
+
+            // reads the start of the results only, then goes away while the query waits on it.
+            try (Socket socket = new Socket("localhost", big.port())) {
+                OutputStream out = socket.getOutputStream();
+                out.write(("GET /sparql/kg?format=tsv&query=" + q + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+
+                InputStream in = socket.getInputStream();
+                assertTrue(in.read(new byte[1024]) > 0);
+                assertTrue(endpoint.availableSlots() < 2);
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (endpoint.availableSlots() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+
+            assertEquals(2, endpoint.availableSlots());
+        } finally {
+            big.disposeNow();
+        }
+    }
+
+    public void testRewrittenSourceIsReloaded() throws Exception {
+        Path nt = Files.createTempFile("kg", ".nt");
+        String triple = "<https://clinicaltrials.gov/ct2/show/NCT00000001> <" + Constants.RDF_SCHEMA_LABEL + "> \"%s\" .\n";
+        Files.writeString(nt, String.format(triple, "first"));
+
+        SparqlEndpoint.Loader loader = source -> {
+            Model m = ModelFactory.createDefaultModel();
+            RDFDataMgr.read(m, source.toString(), Lang.NT);
+            return DatasetFactory.wrap(m);
+        };
+        QueryCache reloadCache = new QueryCache(1 << 20);
+        DisposableServer reloading = new SparqlEndpoint(Map.of("kg", loader.load(nt)), Map.of("kg", nt), reloadCache,
+                null, 2, 100, 5000).reloadOnChange(loader, 20).start(0);
+
+        try {
+            String url = "http://localhost:" + reloading.port() + "/sparql/kg?format=tsv&query="
+                    + URLEncoder.encode("select ?l where { ?t <" + Constants.RDF_SCHEMA_LABEL + "> ?l }", StandardCharsets.UTF_8);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url)).build();
+            HttpClient client = HttpClient.newHttpClient();
+
+            assertEquals("?l\n\"first\"\n", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            assertEquals("?l\n\"first\"\n", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            assertEquals(1L, reloadCache.metrics().get("hits"));
+
+            // a new BUILD output, of the same size : only its modified time tells it apart.
+            Files.writeString(nt, String.format(triple, "again"));
+            Files.setLastModifiedTime(nt, FileTime.fromMillis(Files.getLastModifiedTime(nt).toMillis() + 2000));
+
+            String body = "";
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!body.contains("again") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+                body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+            }
+
+            assertEquals("?l\n\"again\"\n", body);
+            assertEquals(1L, reloadCache.metrics().get("invalidations"));
+        } finally {
+            reloading.disposeNow();
+            Files.delete(nt);
+        }
+    }
+
+    public void testEntityDocumentsAndContext() throws Exception {
+        Path dir = Files.createTempDirectory("entities");
+        Path nt = dir.resolve("kg.nt");
+        Path documents = dir.resolve("kg.jsonld");
+
+        Files.writeString(nt, "<https://www.who.int/clinical-trials-registry-platform/CTRI/2020/08/027368> <"
+                + Constants.NAMED_EDGE + "Condition> <http://id.nlm.nih.gov/mesh/2022/D001249> .\n");
+        EntityDocuments.build(documents, 1 << 20, nt);
+
+        DisposableServer withEntities = new SparqlEndpoint(Map.of(), Map.of(), null, EntityDocuments.open(documents),
+                2, 100, 5000).start(0);
+
+        try {
+            String base = "http://localhost:" + withEntities.port();
+            HttpClient client = HttpClient.newHttpClient();
+
+            // ICTRP ids hold slashes.
+            HttpResponse<String> trial = client.send(HttpRequest.newBuilder(URI.create(base + "/entities/trial/CTRI/2020/08/027368")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, trial.statusCode());
+            assertEquals("application/ld+json", trial.headers().firstValue("Content-Type").orElse(""));
+            assertTrue(trial.body(), trial.body().contains("\"@id\":\"ictrp:CTRI/2020/08/027368\""));
+            assertTrue(trial.body(), trial.body().contains("\"Condition\":\"mesh:2022/D001249\""));
+
+            assertEquals(404, client.send(HttpRequest.newBuilder(URI.create(base + "/entities/trial/CTRI/2020/08/000000")).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            HttpResponse<String> context = client.send(HttpRequest.newBuilder(URI.create(base + EntityDocuments.CONTEXT_PATH)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, context.statusCode());
+            assertTrue(context.body(), context.body().contains("\"@vocab\":\"" + Constants.NAMED_EDGE + "\""));
+        } finally {
+            withEntities.disposeNow();
+        }
+    }
+
+    public void testRejectsBadQueries() throws Exception {
+        assertEquals(400, get("select where {", "application/sparql-results+json").statusCode());
+        assertEquals(400, get("construct { ?s ?p ?o } where { ?s ?p ?o }", "text/tab-separated-values").statusCode());
+    }
+}
@@ -0,0 +1,64 @@
+package com.vaidhyamegha.data_cloud.kg;
+
+import junit.framework.TestCase;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class TripleSorterTest extends TestCase {
+
+    public void testSpilledRunsMergeIntoDistinctTriples() throws Exception {
+        Path dir = Files.createTempDirectory("sorter");
+        TermDictionary terms = new TermDictionary();
+        Node p = NodeFactory.createURI(Constants.NAMED_EDGE + "MeSH_DUI");
+        Set<Triple> expected = new HashSet<>();
+        Random random = new Random(42);
+
+        // the smallest budget buffers 65536 triples, so 200000 adds spill several runs per sorter.
+        TripleSorter a = new TripleSorter(dir, "a", terms, 0);
+        TripleSorter b = new TripleSorter(dir, "b", terms, 0);
+
+        for (int i = 0; i < 200_000; i++) {
+            Triple t = Triple.create(RESOURCE.PUBMED_ARTICLE.createNode(String.valueOf(random.nextInt(5000))), p,
+                    RESOURCE.MESH_DUI.createNode("D" + random.nextInt(20)));
+
+            (i % 2 == 0 ? a : b).add(t);
+            expected.add(t);
+        }
+        a.seal();
+        b.seal();
+
+        assertTrue(a.runs() > 1);
+        assertTrue(b.runs() > 1);
+        assertEquals(200_000, a.added() + b.added());
+
+        List<Triple> merged = new ArrayList<>();
+        long written = TripleSorter.mergeUnique(List.of(a, b), terms, new StreamRDFBase() {
+            @Override
+            public void triple(Triple t) {
+                merged.add(t);
+            }
+        });
+
+        assertEquals(expected.size(), written);
+        assertEquals(expected, new HashSet<>(merged));
+
+        a.close();
+        b.close();
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    public void testSortOrdersPairs() {
+        long[] pairs = {3, 1, 1, 2, 3, 0, 1, 2, 2, 9};
+        TripleSorter.sort(pairs, 0, 5);
+
+        assertTrue(Arrays.equals(new long[]{1, 2, 1, 2, 2, 9, 3, 0, 3, 1}, pairs));
+    }
+}